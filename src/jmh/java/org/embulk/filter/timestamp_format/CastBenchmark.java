@@ -0,0 +1,158 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.filter.timestamp_format.cast.DoubleCast;
+import org.embulk.filter.timestamp_format.cast.LongCast;
+import org.embulk.filter.timestamp_format.cast.StringCast;
+import org.embulk.filter.timestamp_format.cast.TimestampCast;
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+import org.jruby.embed.ScriptingContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Covers each input => output type pair of ColumnConverter through the cast helpers it calls
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CastBenchmark
+{
+    @Param({"%Y-%m-%d %H:%M:%S.%N %z", "yyyy-MM-dd HH:mm:ss.nnnnnnnnn Z"})
+    public String fromFormat;
+
+    @Param({"%Y-%m-%d %H:%M:%S.%6N %z", "yyyy-MM-dd HH:mm:ss.nnnnnn Z"})
+    public String toFormat;
+
+    private TimestampParser parser;
+    private TimestampFormatter formatter;
+    private final TimestampUnit fromUnit = TimestampUnit.MilliSecond;
+    private final TimestampUnit toUnit = TimestampUnit.MicroSecond;
+
+    private long longValue;
+    private double doubleValue;
+    private String stringValue;
+    private Timestamp timestampValue;
+
+    @Setup
+    public void setup()
+    {
+        ScriptingContainer jruby = new ScriptingContainer();
+        parser = new TimestampParser(jruby, Arrays.asList(fromFormat), DateTimeZone.UTC);
+        formatter = new TimestampFormatter(jruby, toFormat, DateTimeZone.UTC);
+
+        longValue = 1463065359123L;
+        doubleValue = 1463065359123.456;
+        stringValue = "2016-05-12 15:02:39.123456789 +0000";
+        timestampValue = Timestamp.ofEpochSecond(1463065359, 123456789);
+    }
+
+    @Benchmark
+    public String longToString()
+    {
+        return LongCast.asString(longValue, fromUnit, formatter);
+    }
+
+    @Benchmark
+    public Timestamp longToTimestamp()
+    {
+        return LongCast.asTimestamp(longValue, fromUnit);
+    }
+
+    @Benchmark
+    public long longToLong()
+    {
+        return LongCast.asLong(longValue, fromUnit, toUnit);
+    }
+
+    @Benchmark
+    public double longToDouble()
+    {
+        return LongCast.asDouble(longValue, fromUnit, toUnit);
+    }
+
+    @Benchmark
+    public String doubleToString()
+    {
+        return DoubleCast.asString(doubleValue, fromUnit, formatter);
+    }
+
+    @Benchmark
+    public Timestamp doubleToTimestamp()
+    {
+        return DoubleCast.asTimestamp(doubleValue, fromUnit);
+    }
+
+    @Benchmark
+    public long doubleToLong()
+    {
+        return DoubleCast.asLong(doubleValue, fromUnit, toUnit);
+    }
+
+    @Benchmark
+    public double doubleToDouble()
+    {
+        return DoubleCast.asDouble(doubleValue, fromUnit, toUnit);
+    }
+
+    @Benchmark
+    public String stringToString()
+    {
+        return StringCast.asString(stringValue, parser, formatter);
+    }
+
+    @Benchmark
+    public Timestamp stringToTimestamp()
+    {
+        return StringCast.asTimestamp(stringValue, parser);
+    }
+
+    @Benchmark
+    public long stringToLong()
+    {
+        return StringCast.asLong(stringValue, parser, toUnit);
+    }
+
+    @Benchmark
+    public double stringToDouble()
+    {
+        return StringCast.asDouble(stringValue, parser, toUnit);
+    }
+
+    @Benchmark
+    public String timestampToString()
+    {
+        return TimestampCast.asString(timestampValue, formatter);
+    }
+
+    @Benchmark
+    public Timestamp timestampToTimestamp()
+    {
+        return TimestampCast.asTimestamp(timestampValue);
+    }
+
+    @Benchmark
+    public long timestampToLong()
+    {
+        return TimestampCast.asLong(timestampValue, toUnit);
+    }
+
+    @Benchmark
+    public double timestampToDouble()
+    {
+        return TimestampCast.asDouble(timestampValue, toUnit);
+    }
+}
@@ -0,0 +1,221 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.Column;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+// Generates input pages for ThroughputBenchmark
+public class SyntheticPageGenerator
+{
+    static final long BASE_EPOCH_MILLIS = 1463065359000L;
+    static final String INVALID_VALUE = "invalid timestamp";
+
+    private final ThroughputScenario scenario;
+    private final Schema schema;
+    private final DateTimeFormatter valueFormatter;
+    private final long[] pool;
+    private Random random;
+    private long bytes;
+
+    public SyntheticPageGenerator(ThroughputScenario scenario)
+    {
+        this.scenario = scenario;
+        this.schema = buildSchema(scenario);
+        this.valueFormatter = DateTimeFormat.forPattern(scenario.valueFormat).withLocale(Locale.ENGLISH).withZone(DateTimeZone.UTC);
+        Random poolRandom = new Random(scenario.seed);
+        if (scenario.cardinality > 0) {
+            this.pool = new long[scenario.cardinality];
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = BASE_EPOCH_MILLIS + (long) (poolRandom.nextDouble() * 86400000L);
+            }
+            Arrays.sort(pool);
+        }
+        else {
+            this.pool = null;
+        }
+    }
+
+    public Schema getSchema()
+    {
+        return schema;
+    }
+
+    // filter column names, the first cast_column_count columns
+    public List<String> getCastColumnNames()
+    {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < scenario.getCastColumnCount(); i++) {
+            String name = schema.getColumn(i).getName();
+            if (scenario.columnType.equals("json")) {
+                StringBuilder path = new StringBuilder("$.").append(name);
+                for (int depth = 0; depth < scenario.jsonDepth; depth++) {
+                    path.append(".nested");
+                }
+                names.add(path.append(".time").toString());
+            }
+            else {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    // @return approximate bytes of the generated values
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    public List<Page> generate(BufferAllocator allocator)
+    {
+        final List<Page> pages = new ArrayList<>();
+        PageOutput collector = new PageOutput() {
+            @Override
+            public void add(Page page)
+            {
+                pages.add(page);
+            }
+
+            @Override
+            public void finish() {}
+
+            @Override
+            public void close() {}
+        };
+
+        this.random = new Random(scenario.seed);
+        this.bytes = 0;
+        try (PageBuilder pageBuilder = new PageBuilder(allocator, schema, collector)) {
+            for (long row = 0; row < scenario.rowCount; row++) {
+                for (Column column : schema.getColumns()) {
+                    setValue(pageBuilder, column, row);
+                }
+                pageBuilder.addRecord();
+            }
+            pageBuilder.finish();
+        }
+        return pages;
+    }
+
+    private void setValue(PageBuilder pageBuilder, Column column, long row)
+    {
+        if (random.nextDouble() < scenario.nullRatio) {
+            pageBuilder.setNull(column);
+            return;
+        }
+        long millis = nextEpochMillis(row);
+        switch (scenario.columnType) {
+            case "string":
+                String text = nextText(millis);
+                bytes += text.length();
+                pageBuilder.setString(column, text);
+                break;
+            case "long":
+                bytes += 8;
+                pageBuilder.setLong(column, millis);
+                break;
+            case "double":
+                bytes += 8;
+                pageBuilder.setDouble(column, millis);
+                break;
+            case "timestamp":
+                bytes += 12;
+                pageBuilder.setTimestamp(column, Timestamp.ofEpochMilli(millis));
+                break;
+            case "json":
+                Value value = nextJson(millis, scenario.jsonDepth);
+                bytes += value.toJson().getBytes(StandardCharsets.UTF_8).length;
+                pageBuilder.setJson(column, value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown column_type: " + scenario.columnType);
+        }
+    }
+
+    private long nextEpochMillis(long row)
+    {
+        boolean monotonic = scenario.order.equals("monotonic");
+        if (pool != null) {
+            if (monotonic) {
+                return pool[(int) (row * pool.length / scenario.rowCount)];
+            }
+            return pool[random.nextInt(pool.length)];
+        }
+        if (monotonic) {
+            return BASE_EPOCH_MILLIS + row * scenario.stepMillis;
+        }
+        return BASE_EPOCH_MILLIS + (long) (random.nextDouble() * 86400000L);
+    }
+
+    private String nextText(long millis)
+    {
+        if (random.nextDouble() < scenario.invalidRatio) {
+            return INVALID_VALUE;
+        }
+        return valueFormatter.print(millis);
+    }
+
+    private Value nextJson(long millis, int depth)
+    {
+        Map<Value, Value> map = new HashMap<>();
+        for (int i = 0; i < scenario.jsonWidth; i++) {
+            map.put(ValueFactory.newString("key" + i), ValueFactory.newString("value" + i));
+        }
+        if (depth > 0) {
+            map.put(ValueFactory.newString("nested"), nextJson(millis, depth - 1));
+        }
+        else {
+            map.put(ValueFactory.newString("time"), ValueFactory.newString(nextText(millis)));
+        }
+        return ValueFactory.newMap(map);
+    }
+
+    private static Schema buildSchema(ThroughputScenario scenario)
+    {
+        Type type;
+        switch (scenario.columnType) {
+            case "string":
+                type = Types.STRING;
+                break;
+            case "long":
+                type = Types.LONG;
+                break;
+            case "double":
+                type = Types.DOUBLE;
+                break;
+            case "timestamp":
+                type = Types.TIMESTAMP;
+                break;
+            case "json":
+                type = Types.JSON;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown column_type: " + scenario.columnType);
+        }
+        Schema.Builder builder = Schema.builder();
+        for (int i = 0; i < scenario.columnCount; i++) {
+            builder.add("c" + i, type);
+        }
+        return builder.build();
+    }
+}
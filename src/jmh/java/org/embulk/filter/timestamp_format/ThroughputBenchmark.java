@@ -0,0 +1,187 @@
+package org.embulk.filter.timestamp_format;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.embulk.EmbulkEmbed;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecAction;
+import org.embulk.spi.ExecSession;
+import org.embulk.spi.FilterPlugin;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// End-to-end throughput harness running TimestampFormatFilterPlugin in-process
+//
+// ./gradlew benchThroughput [-Pbench.scenarios=bench/scenarios.json] [-Pbench.output=build/reports/bench/throughput.json]
+public class ThroughputBenchmark
+{
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ThroughputBenchmark() {}
+
+    public static void main(String[] args) throws Exception
+    {
+        File scenariosFile = new File(args.length > 0 ? args[0] : "bench/scenarios.json");
+        File outputFile = new File(args.length > 1 ? args[1] : "build/reports/bench/throughput.json");
+        final List<ThroughputScenario> scenarios = mapper.readValue(scenariosFile, new TypeReference<List<ThroughputScenario>>() {});
+
+        final EmbulkEmbed embed = new EmbulkEmbed.Bootstrap().initializeCloseable();
+        ExecSession session = ExecSession.builder(embed.getInjector()).build();
+        List<Map<String, Object>> results;
+        try {
+            results = Exec.doWith(session, new ExecAction<List<Map<String, Object>>>() {
+                public List<Map<String, Object>> run() throws Exception
+                {
+                    List<Map<String, Object>> results = new ArrayList<>();
+                    for (ThroughputScenario scenario : scenarios) {
+                        results.add(runScenario(embed, scenario));
+                    }
+                    return results;
+                }
+            });
+        }
+        finally {
+            session.cleanup();
+            embed.destroy();
+        }
+
+        if (outputFile.getParentFile() != null) {
+            outputFile.getParentFile().mkdirs();
+        }
+        mapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(outputFile, results);
+        System.out.println("> Results are written to " + outputFile.getPath());
+    }
+
+    private static Map<String, Object> runScenario(EmbulkEmbed embed, ThroughputScenario scenario) throws Exception
+    {
+        SyntheticPageGenerator generator = new SyntheticPageGenerator(scenario);
+        ConfigSource config = embed.newConfigLoader().fromYamlString(mapper.writeValueAsString(buildFilterConfig(scenario, generator)));
+
+        for (int i = 0; i < scenario.warmupIterations; i++) {
+            runIteration(config, generator);
+        }
+
+        long elapsedNanos = 0;
+        long gcMillis = 0;
+        long gcCount = 0;
+        long rows = 0;
+        long bytes = 0;
+        for (int i = 0; i < scenario.iterations; i++) {
+            long[] gcBefore = gcStats();
+            elapsedNanos += runIteration(config, generator);
+            long[] gcAfter = gcStats();
+            gcCount += gcAfter[0] - gcBefore[0];
+            gcMillis += gcAfter[1] - gcBefore[1];
+            rows += scenario.rowCount;
+            bytes += generator.getBytes();
+        }
+
+        double seconds = elapsedNanos / 1000000000.0;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", scenario.name);
+        result.put("rows", rows);
+        result.put("bytes", bytes);
+        result.put("elapsed_ms", elapsedNanos / 1000000);
+        result.put("rows_per_sec", rows / seconds);
+        result.put("mb_per_sec", bytes / seconds / (1024 * 1024));
+        result.put("gc_count", gcCount);
+        result.put("gc_time_ms", gcMillis);
+        result.put("scenario", scenario);
+        System.out.println(String.format("%s: %.0f rows/s, %.2f MB/s, gc %d ms", scenario.name,
+                rows / seconds, bytes / seconds / (1024 * 1024), gcMillis));
+        return result;
+    }
+
+    // @return nano seconds spent in the filter, page generation is excluded
+    private static long runIteration(ConfigSource config, SyntheticPageGenerator generator)
+    {
+        final Schema inputSchema = generator.getSchema();
+        List<Page> pages = generator.generate(Exec.getBufferAllocator());
+
+        final TimestampFormatFilterPlugin plugin = new TimestampFormatFilterPlugin();
+        final TaskSource[] taskSource = new TaskSource[1];
+        final Schema[] outputSchema = new Schema[1];
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control() {
+            @Override
+            public void run(TaskSource source, Schema schema)
+            {
+                taskSource[0] = source;
+                outputSchema[0] = schema;
+            }
+        });
+
+        long startedAt = System.nanoTime();
+        PageOutput output = plugin.open(taskSource[0], inputSchema, outputSchema[0], new DiscardPageOutput());
+        try {
+            for (Page page : pages) {
+                output.add(page);
+            }
+            output.finish();
+        }
+        finally {
+            output.close();
+        }
+        return System.nanoTime() - startedAt;
+    }
+
+    private static Map<String, Object> buildFilterConfig(ThroughputScenario scenario, SyntheticPageGenerator generator)
+    {
+        List<Map<String, Object>> columns = new ArrayList<>();
+        for (String name : generator.getCastColumnNames()) {
+            Map<String, Object> column = new HashMap<>();
+            column.put("name", name);
+            column.put("type", scenario.toType);
+            if (scenario.columnType.equals("long") || scenario.columnType.equals("double")) {
+                column.put("from_unit", "ms");
+            }
+            columns.add(column);
+        }
+        Map<String, Object> config = new HashMap<>();
+        config.put("type", "timestamp_format");
+        config.put("default_from_timestamp_format", new String[] {scenario.fromFormat});
+        config.put("default_to_timestamp_format", scenario.toFormat);
+        config.put("columns", columns);
+        config.putAll(scenario.filter);
+        return config;
+    }
+
+    // @return [collection count, collection time in milli seconds]
+    private static long[] gcStats()
+    {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(bean.getCollectionCount(), 0);
+            time += Math.max(bean.getCollectionTime(), 0);
+        }
+        return new long[] {count, time};
+    }
+
+    private static class DiscardPageOutput implements PageOutput
+    {
+        @Override
+        public void add(Page page)
+        {
+            page.release();
+        }
+
+        @Override
+        public void finish() {}
+
+        @Override
+        public void close() {}
+    }
+}
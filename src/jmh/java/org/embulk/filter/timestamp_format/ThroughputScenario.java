@@ -0,0 +1,88 @@
+package org.embulk.filter.timestamp_format;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// One entry of bench/scenarios.json
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ThroughputScenario
+{
+    @JsonProperty("name")
+    public String name = "default";
+
+    @JsonProperty("row_count")
+    public long rowCount = 1000000;
+
+    @JsonProperty("column_count")
+    public int columnCount = 1;
+
+    // number of columns configured in the filter, others are passed through. -1 means all
+    @JsonProperty("cast_column_count")
+    public int castColumnCount = -1;
+
+    // input column type: string, long, double, timestamp, or json
+    @JsonProperty("column_type")
+    public String columnType = "string";
+
+    // output column type: string, timestamp, long, or double
+    @JsonProperty("to_type")
+    public String toType = "string";
+
+    @JsonProperty("null_ratio")
+    public double nullRatio = 0.0;
+
+    // ratio of values which can not be parsed (string and json columns only)
+    @JsonProperty("invalid_ratio")
+    public double invalidRatio = 0.0;
+
+    // number of distinct timestamps, 0 means every row has its own value
+    @JsonProperty("cardinality")
+    public int cardinality = 0;
+
+    // monotonic or random
+    @JsonProperty("order")
+    public String order = "monotonic";
+
+    @JsonProperty("step_millis")
+    public long stepMillis = 10;
+
+    @JsonProperty("json_depth")
+    public int jsonDepth = 1;
+
+    // number of untouched sibling keys in every json object
+    @JsonProperty("json_width")
+    public int jsonWidth = 4;
+
+    // Joda-Time pattern to render string values
+    @JsonProperty("value_format")
+    public String valueFormat = "yyyy-MM-dd HH:mm:ss.SSS Z";
+
+    @JsonProperty("from_format")
+    public String fromFormat = "%Y-%m-%d %H:%M:%S.%N %z";
+
+    @JsonProperty("to_format")
+    public String toFormat = "%Y-%m-%d %H:%M:%S.%6N %z";
+
+    @JsonProperty("warmup_iterations")
+    public int warmupIterations = 1;
+
+    @JsonProperty("iterations")
+    public int iterations = 3;
+
+    @JsonProperty("seed")
+    public long seed = 1;
+
+    // merged into the generated filter config as is, e.g. {"timestamp_parser": "auto_java"}
+    @JsonProperty("filter")
+    public Map<String, Object> filter = new HashMap<>();
+
+    @JsonIgnore
+    public int getCastColumnCount()
+    {
+        return castColumnCount < 0 ? columnCount : Math.min(castColumnCount, columnCount);
+    }
+}
@@ -0,0 +1,57 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+import org.jruby.embed.ScriptingContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimestampFormatterBenchmark
+{
+    @Param({
+            "%Y-%m-%d %H:%M:%S.%6N %z",
+            "%Y-%m-%d %H:%M:%S.%N %z",
+            "%Y-%m-%d",
+            "yyyy-MM-dd HH:mm:ss.SSS Z",
+            "yyyy-MM-dd HH:mm:ss.nnnnnn Z",
+            "yyyy-MM-dd HH:mm:ss.nnnnnnnnn Z",
+            "yyyy-MM-dd",
+    })
+    public String format;
+
+    @Param({"UTC", "Asia/Tokyo"})
+    public String timezone;
+
+    private TimestampFormatter formatter;
+    private Timestamp timestamp;
+
+    @Setup
+    public void setup()
+    {
+        formatter = new TimestampFormatter(new ScriptingContainer(), format, DateTimeZone.forID(timezone));
+        timestamp = Timestamp.ofEpochSecond(1463065359, 123456789);
+    }
+
+    @Benchmark
+    public String format()
+    {
+        return formatter.format(timestamp);
+    }
+}
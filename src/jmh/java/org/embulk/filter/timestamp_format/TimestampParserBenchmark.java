@@ -0,0 +1,85 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+import org.jruby.embed.ScriptingContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimestampParserBenchmark
+{
+    // scenario, setup() switches over it to choose the text and formats
+    @Param({
+            "jruby",
+            "jruby_multi",
+            "jruby_nano",
+            "java",
+            "java_multi",
+            "java_nano",
+    })
+    public String formats;
+
+    private TimestampParser parser;
+    private String text;
+
+    @Setup
+    public void setup()
+    {
+        List<String> formatList;
+        switch (formats) {
+            case "jruby":
+                text = "2016-05-12 20:14:13 +0900";
+                formatList = Arrays.asList("%Y-%m-%d %H:%M:%S %z");
+                break;
+            case "jruby_multi":
+                // matches the last format, pays for the misses of the former ones
+                text = "2016-05-12 20:14:13 +0900";
+                formatList = Arrays.asList("%Y-%m-%dT%H:%M:%S%z", "%Y/%m/%d %H:%M:%S %z", "%Y-%m-%d %H:%M:%S %z");
+                break;
+            case "jruby_nano":
+                text = "2016-05-12 20:14:13.123456789 +0900";
+                formatList = Arrays.asList("%Y-%m-%d %H:%M:%S.%N %z");
+                break;
+            case "java":
+                text = "2016-05-12 20:14:13 +0900";
+                formatList = Arrays.asList("yyyy-MM-dd HH:mm:ss Z");
+                break;
+            case "java_multi":
+                text = "2016-05-12 20:14:13 +0900";
+                formatList = Arrays.asList("yyyy-MM-dd'T'HH:mm:ssZ", "yyyy/MM/dd HH:mm:ss Z", "yyyy-MM-dd HH:mm:ss Z");
+                break;
+            case "java_nano":
+                text = "2016-05-12 20:14:13.123456789 +0900";
+                formatList = Arrays.asList("yyyy-MM-dd HH:mm:ss.nnnnnnnnn Z");
+                break;
+            default:
+                throw new IllegalArgumentException(formats);
+        }
+        parser = new TimestampParser(new ScriptingContainer(), formatList, DateTimeZone.UTC);
+    }
+
+    @Benchmark
+    public Timestamp parse()
+    {
+        return parser.parse(text);
+    }
+}
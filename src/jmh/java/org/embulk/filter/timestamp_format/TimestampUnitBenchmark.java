@@ -0,0 +1,80 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.Timestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimestampUnitBenchmark
+{
+    @Param({"Second", "MilliSecond", "MicroSecond", "NanoSecond"})
+    public TimestampUnit fromUnit;
+
+    @Param({"Second", "MilliSecond", "MicroSecond", "NanoSecond"})
+    public TimestampUnit toUnit;
+
+    private long longValue;
+    private double doubleValue;
+    private Timestamp timestamp;
+
+    @Setup
+    public void setup()
+    {
+        long epochNanoSecond = 1463065359123456789L;
+        longValue = epochNanoSecond / fromUnit.scaleToNano();
+        doubleValue = epochNanoSecond / (double) fromUnit.scaleToNano();
+        timestamp = Timestamp.ofEpochSecond(0, epochNanoSecond);
+    }
+
+    @Benchmark
+    public long changeUnitLong()
+    {
+        return TimestampUnit.changeUnit(longValue, fromUnit, toUnit);
+    }
+
+    @Benchmark
+    public double changeUnitDouble()
+    {
+        return TimestampUnit.changeUnit(doubleValue, fromUnit, toUnit);
+    }
+
+    @Benchmark
+    public long toLong()
+    {
+        return TimestampUnit.toLong(timestamp, toUnit);
+    }
+
+    @Benchmark
+    public double toDouble()
+    {
+        return TimestampUnit.toDouble(timestamp, toUnit);
+    }
+
+    @Benchmark
+    public Timestamp longToTimestamp()
+    {
+        return TimestampUnit.toTimestamp(longValue, fromUnit);
+    }
+
+    @Benchmark
+    public Timestamp doubleToTimestamp()
+    {
+        return TimestampUnit.toTimestamp(doubleValue, fromUnit);
+    }
+}
@@ -0,0 +1,326 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.time.TimestampParseException;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Parses values of a column whose from_format has auto.
+// Layouts of the first SAMPLE_SIZE values are detected as ruby formats such as "%Y-%m-%d %H:%M:%S.%3N %:z", which are
+// compiled by CompiledTimestampParser, and later values are parsed with the detected formats in the order of frequency.
+// A value which none of them matches is parsed with formats listed with auto if any, or its layout is detected again.
+// Not thread-safe, same with TimestampParser
+public class AutoFormatParser
+{
+    public static final String AUTO_FORMAT = "auto";
+    private static final int SAMPLE_SIZE = 100;
+    private static final int MAX_DETECTED_FORMATS = 8;
+
+    private final JRubyHelperFactory helperFactory;
+    private final DateTimeZone defaultFromTimeZone;
+    private final TimestampParser fallbackParser; // null if no formats are listed with auto
+
+    // detected format => parser and hit count while sampling
+    private final Map<String, TimestampParser> sampleParsers = new HashMap<>();
+    private final Map<String, Long> sampleHitCounts = new LinkedHashMap<>();
+    private int sampledCount = 0;
+
+    // set after sampling
+    private final List<String> detectedFormatList = new ArrayList<>();
+    private long[] previousHitCounts = new long[0]; // hits of detectedFormatList before detectedParser is rebuilt
+    private TimestampParser detectedParser = null;
+
+    private String lastFormat = null; // format which parsed the last value
+
+    public AutoFormatParser(JRubyHelperFactory helperFactory, DateTimeZone defaultFromTimeZone, TimestampParser fallbackParser)
+    {
+        this.helperFactory = helperFactory;
+        this.defaultFromTimeZone = defaultFromTimeZone;
+        this.fallbackParser = fallbackParser;
+    }
+
+    public Timestamp parse(String text) throws TimestampParseException, IllegalArgumentException
+    {
+        if (detectedParser == null) {
+            return sample(text);
+        }
+        try {
+            Timestamp timestamp = detectedParser.parse(text);
+            lastFormat = detectedParser.getLastFormat();
+            return timestamp;
+        }
+        catch (TimestampParseException | IllegalArgumentException ex) {
+            return parseUndetected(text);
+        }
+    }
+
+    public String getLastFormat()
+    {
+        return lastFormat;
+    }
+
+    // counts a value which was parsed with the format before and taken from a cache
+    public void recordCachedHit(String format)
+    {
+        if (detectedParser == null) {
+            Long hitCount = sampleHitCounts.get(format);
+            if (hitCount != null) {
+                sampleHitCounts.put(format, hitCount + 1);
+                return;
+            }
+        }
+        else {
+            int index = detectedFormatList.indexOf(format);
+            if (index >= 0) {
+                previousHitCounts[index]++;
+                return;
+            }
+        }
+        if (fallbackParser != null) {
+            fallbackParser.recordCachedHit(format);
+        }
+    }
+
+    private Timestamp sample(String text) throws TimestampParseException, IllegalArgumentException
+    {
+        try {
+            String format = detect(text);
+            TimestampParser parser = format == null ? null : sampleParsers.get(format);
+            if (format != null && parser == null && sampleParsers.size() < MAX_DETECTED_FORMATS) {
+                parser = new TimestampParser(helperFactory, Collections.singletonList(format), defaultFromTimeZone, false);
+                sampleParsers.put(format, parser);
+            }
+            if (parser != null) {
+                Timestamp timestamp = tryParse(parser, text);
+                if (timestamp != null) {
+                    Long hitCount = sampleHitCounts.get(format);
+                    sampleHitCounts.put(format, hitCount == null ? 1L : hitCount + 1);
+                    lastFormat = format;
+                    return timestamp;
+                }
+            }
+            return parseFallback(text);
+        }
+        finally {
+            if (++sampledCount == SAMPLE_SIZE) {
+                finishSampling();
+            }
+        }
+    }
+
+    private void finishSampling()
+    {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(sampleHitCounts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2)
+            {
+                return e2.getValue().compareTo(e1.getValue());
+            }
+        });
+        previousHitCounts = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            detectedFormatList.add(entries.get(i).getKey());
+            previousHitCounts[i] = entries.get(i).getValue();
+        }
+        sampleParsers.clear();
+        rebuildDetectedParser();
+    }
+
+    private void rebuildDetectedParser()
+    {
+        if (detectedParser != null) {
+            long[] hitCounts = detectedParser.getFormatHitCounts();
+            for (int i = 0; i < hitCounts.length; i++) {
+                previousHitCounts[i] += hitCounts[i];
+            }
+        }
+        if (previousHitCounts.length < detectedFormatList.size()) {
+            long[] newHitCounts = new long[detectedFormatList.size()];
+            System.arraycopy(previousHitCounts, 0, newHitCounts, 0, previousHitCounts.length);
+            previousHitCounts = newHitCounts;
+        }
+        // adaptive order keeps frequent formats first even if the layout changes in later values
+        detectedParser = detectedFormatList.isEmpty() ? null : new TimestampParser(helperFactory, detectedFormatList, defaultFromTimeZone, true);
+        if (detectedParser == null) {
+            sampledCount = 0; // nothing detected, keeps sampling
+        }
+    }
+
+    // with formats listed with auto if any, otherwise detects the layout of the text again
+    private Timestamp parseUndetected(String text) throws TimestampParseException, IllegalArgumentException
+    {
+        if (fallbackParser != null) {
+            return parseFallback(text);
+        }
+        String format = detect(text);
+        if (format == null || detectedFormatList.contains(format) || detectedFormatList.size() >= MAX_DETECTED_FORMATS) {
+            throw new TimestampParser.InvalidFormatException(text, 0);
+        }
+        TimestampParser parser = new TimestampParser(helperFactory, Collections.singletonList(format), defaultFromTimeZone, false);
+        Timestamp timestamp = parser.parse(text);
+        detectedFormatList.add(format);
+        rebuildDetectedParser();
+        lastFormat = format;
+        return timestamp;
+    }
+
+    private Timestamp parseFallback(String text) throws TimestampParseException, IllegalArgumentException
+    {
+        if (fallbackParser == null) {
+            throw new TimestampParser.InvalidFormatException(text, 0);
+        }
+        Timestamp timestamp = fallbackParser.parse(text);
+        lastFormat = fallbackParser.getLastFormat();
+        return timestamp;
+    }
+
+    private static Timestamp tryParse(TimestampParser parser, String text)
+    {
+        try {
+            return parser.parse(text);
+        }
+        catch (TimestampParseException | IllegalArgumentException ex) {
+            return null; // invalid field values such as 2016-02-30
+        }
+    }
+
+    // detected formats followed by formats listed with auto
+    public List<String> getFormatList()
+    {
+        List<String> formatList = new ArrayList<>(detectedParser == null ? sampleHitCounts.keySet() : detectedFormatList);
+        if (fallbackParser != null) {
+            formatList.addAll(fallbackParser.getFormatList());
+        }
+        return formatList;
+    }
+
+    // in the order of getFormatList()
+    public long[] getFormatHitCounts()
+    {
+        List<Long> hitCounts = new ArrayList<>(detectedParser == null ? sampleHitCounts.values() : Collections.<Long>emptyList());
+        if (detectedParser != null) {
+            long[] detectedHitCounts = detectedParser.getFormatHitCounts();
+            for (int i = 0; i < detectedFormatList.size(); i++) {
+                hitCounts.add(previousHitCounts[i] + detectedHitCounts[i]);
+            }
+        }
+        if (fallbackParser != null) {
+            for (long hitCount : fallbackParser.getFormatHitCounts()) {
+                hitCounts.add(hitCount);
+            }
+        }
+        long[] array = new long[hitCounts.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = hitCounts.get(i);
+        }
+        return array;
+    }
+
+    // @return returns a ruby format of the layout of the text, or null if the layout is unknown.
+    // Supported layouts are year-month-day with -, /, . or no separators optionally followed by T or a space,
+    // hour:minute:second or hhmmss, a fraction, and an offset, and also epoch seconds and milli seconds
+    public static String detect(String text)
+    {
+        int length = text.length();
+        int digits = countDigits(text, 0);
+        if (digits == length) {
+            switch (length) {
+                case 8:
+                    return "%Y%m%d";
+                case 10:
+                    return "%s";
+                case 13:
+                    return "%Q";
+                case 14:
+                    return "%Y%m%d%H%M%S";
+                default:
+                    return null;
+            }
+        }
+        StringBuilder format = new StringBuilder();
+        int i;
+        if (digits == 8) {
+            format.append("%Y%m%d");
+            i = 8;
+        }
+        else if (digits == 4 && length >= 10 && "-/.".indexOf(text.charAt(4)) >= 0
+                && countDigits(text, 5) == 2 && text.charAt(7) == text.charAt(4) && countDigits(text, 8) == 2) {
+            char separator = text.charAt(4);
+            format.append("%Y").append(separator).append("%m").append(separator).append("%d");
+            i = 10;
+        }
+        else {
+            return null;
+        }
+        if (i == length) {
+            return format.toString();
+        }
+
+        // time
+        char c = text.charAt(i++);
+        if (c != 'T' && c != ' ') {
+            return null;
+        }
+        format.append(c);
+        digits = countDigits(text, i);
+        if (digits == 6) {
+            format.append("%H%M%S");
+            i += 6;
+        }
+        else if (digits == 2 && i + 8 <= length && text.charAt(i + 2) == ':' && countDigits(text, i + 3) == 2
+                && text.charAt(i + 5) == ':' && countDigits(text, i + 6) == 2) {
+            format.append("%H:%M:%S");
+            i += 8;
+        }
+        else {
+            return null;
+        }
+        if (i < length && (text.charAt(i) == '.' || text.charAt(i) == ',')) {
+            digits = countDigits(text, i + 1);
+            if (digits == 0 || digits > 9) {
+                return null;
+            }
+            format.append(text.charAt(i)).append('%').append(digits).append('N');
+            i += 1 + digits;
+        }
+        if (i == length) {
+            return format.toString();
+        }
+
+        // offset
+        if (text.charAt(i) == ' ') {
+            format.append(' ');
+            i++;
+        }
+        String offset = text.substring(i);
+        if (offset.equals("Z") || offset.equals("UTC")) {
+            return format.append("%z").toString();
+        }
+        if (offset.length() >= 5 && (offset.charAt(0) == '+' || offset.charAt(0) == '-')) {
+            if (offset.length() == 5 && countDigits(offset, 1) == 4) {
+                return format.append("%z").toString();
+            }
+            if (offset.length() == 6 && countDigits(offset, 1) == 2 && offset.charAt(3) == ':' && countDigits(offset, 4) == 2) {
+                return format.append("%:z").toString();
+            }
+        }
+        return null;
+    }
+
+    private static int countDigits(String text, int start)
+    {
+        int i = start;
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        return i - start;
+    }
+}
@@ -1,30 +1,31 @@
 package org.embulk.filter.timestamp_format;
 
-import io.github.medjed.jsonpathcompiler.expressions.path.PropertyPathToken;
-import org.embulk.filter.timestamp_format.cast.DoubleCast;
-import org.embulk.filter.timestamp_format.cast.LongCast;
-import org.embulk.filter.timestamp_format.cast.StringCast;
-import org.embulk.filter.timestamp_format.cast.TimestampCast;
+import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
+import org.embulk.config.ConfigException;
 import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.ColumnConfig;
 import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.PluginTask;
 import org.embulk.spi.Column;
 import org.embulk.spi.Exec;
-import org.embulk.spi.PageBuilder;
-import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
 import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.BooleanType;
 import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.JsonType;
 import org.embulk.spi.type.LongType;
 import org.embulk.spi.type.StringType;
 import org.embulk.spi.type.TimestampType;
 import org.embulk.spi.type.Type;
 import org.joda.time.DateTimeZone;
-import org.msgpack.value.Value;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 public class ColumnCaster
 {
@@ -32,37 +33,74 @@ public class ColumnCaster
     private final PluginTask task;
     private final Schema inputSchema;
     private final Schema outputSchema;
-    private final PageReader pageReader;
-    private final PageBuilder pageBuilder;
     private final HashMap<String, TimestampParser> timestampParserMap = new HashMap<>();
     private final HashMap<String, TimestampFormatter> timestampFormatterMap = new HashMap<>();
     private final HashMap<String, TimestampUnit> fromTimestampUnitMap = new HashMap<>();
     private final HashMap<String, TimestampUnit> toTimestampUnitMap = new HashMap<>();
+    private final HashSet<String> shouldCastSet = new HashSet<>();
+    private final HashMap<String, ValueCache<String, ValueCache.Entry<String>>> stringCacheMap = new HashMap<>();
+    // output column name => handler, shared by casters of workers of parallelism
+    private final Map<String, InvalidValueHandler> invalidValueHandlerMap;
+    private final List<ColumnMetrics> columnMetricsList = new ArrayList<>();
     private final JsonVisitor jsonVisitor;
+    // shared by parsers of all columns and json paths, evaluates ruby only if any ruby format is used
+    private final JRubyHelperFactory jrubyHelperFactory;
 
-    ColumnCaster(PluginTask task, Schema inputSchema, Schema outputSchema, PageReader pageReader, PageBuilder pageBuilder)
+    ColumnCaster(PluginTask task, Schema inputSchema, Schema outputSchema)
+    {
+        this(task, inputSchema, outputSchema, new LinkedHashMap<String, InvalidValueHandler>());
+    }
+
+    // invalidValueHandlerMap is filled on the first caster, and must not be modified while workers convert records
+    ColumnCaster(PluginTask task, Schema inputSchema, Schema outputSchema, Map<String, InvalidValueHandler> invalidValueHandlerMap)
     {
         this.task         = task;
         this.inputSchema  = inputSchema;
         this.outputSchema = outputSchema;
-        this.pageReader   = pageReader;
-        this.pageBuilder  = pageBuilder;
+        this.invalidValueHandlerMap = invalidValueHandlerMap;
+        this.jrubyHelperFactory = new JRubyHelperFactory(task.getJRuby());
 
+        buildShouldCastSet();
         buildTimestampParserMap();
         buildTimestampFormatterMap();
         buildFromTimestampUnitMap();
         buildToTimestampUnitMap();
+        buildCacheMap();
 
         JsonCaster jsonCaster = new JsonCaster(task, timestampParserMap, timestampFormatterMap, fromTimestampUnitMap, toTimestampUnitMap);
         this.jsonVisitor = new JsonVisitor(task, jsonCaster);
     }
 
+    private void buildShouldCastSet()
+    {
+        // columnName => Boolean to avoid unnecessary cast
+        for (ColumnConfig columnConfig : task.getColumns()) {
+            String name = columnConfig.getName();
+            if (PathCompiler.isProbablyJsonPath(name)) {
+                String columnName = JsonPathUtil.getColumnName(name);
+                shouldCastSet.add(columnName);
+                continue;
+            }
+            shouldCastSet.add(name);
+        }
+    }
+
+    private boolean shouldCast(String name)
+    {
+        return shouldCastSet.contains(name);
+    }
+
     private void buildTimestampParserMap()
     {
         // columnName or jsonPath => TimestampParser
         // we do not know input type of json here, so creates anyway
         for (ColumnConfig columnConfig : task.getColumns()) {
             TimestampParser parser = getTimestampParser(columnConfig, task);
+            // strings of epoch numbers such as "1463065359.123" are parsed before formats only if from_string_unit is given,
+            // because formats such as %Y%m%d also match digits
+            if (columnConfig.getFromStringUnit().isPresent()) {
+                parser.setFromUnit(columnConfig.getFromStringUnit().get());
+            }
             this.timestampParserMap.put(columnConfig.getName(), parser);
         }
     }
@@ -71,8 +109,26 @@ public class ColumnCaster
     {
         DateTimeZone timezone = columnConfig.getFromTimeZone().or(task.getDefaultFromTimeZone());
         List<String> formatList = columnConfig.getFromFormat().or(task.getDefaultFromTimestampFormat());
-        List<String> newFormatList = new ArrayList<>(formatList);
         String name = columnConfig.getName();
+        if (formatList.contains(AutoFormatParser.AUTO_FORMAT)) {
+            // other formats are used for values whose layouts are not detected
+            List<String> fallbackFormatList = new ArrayList<>(formatList);
+            fallbackFormatList.removeAll(Collections.singleton(AutoFormatParser.AUTO_FORMAT));
+            TimestampParser fallbackParser = fallbackFormatList.isEmpty() ? null : newTimestampParser(name, fallbackFormatList, timezone, task);
+            return TimestampParser.ofAutoFormat(new AutoFormatParser(jrubyHelperFactory, timezone, fallbackParser), timezone);
+        }
+        return newTimestampParser(name, formatList, timezone, task);
+    }
+
+    private TimestampParser newTimestampParser(String name, List<String> formatList, DateTimeZone timezone, PluginTask task)
+    {
+        List<String> newFormatList = new ArrayList<>(formatList);
+        if (task.getTimeStampParser().equals("java_time")) {
+            List<String> javaTimeFormatList = toJavaTimeFormatList(name, formatList, true);
+            if (javaTimeFormatList != null) {
+                return TimestampParser.ofJavaTime(javaTimeFormatList, timezone, task.getAdaptiveFormatOrder());
+            }
+        }
         if (task.getTimeStampParser().equals("auto_java")) {
             for (int i = 0; i < formatList.size(); i++) {
                 String format = formatList.get(i);
@@ -81,14 +137,19 @@ public class ColumnCaster
                 }
                 String javaFormat = TimestampFormatConverter.toJavaFormat(format);
                 if (javaFormat == null) {
-                    logger.info(String.format("%s: Failed to convert ruby parser to java parser: \"%s\", Use ruby parser as is", name, format));
+                    if (CompiledTimestampParser.compileRubyFormat(format, timezone) != null) {
+                        // %k, %s and so on which Joda-Time does not have are parsed natively without JRuby anyway
+                        logger.debug(String.format("%s: Use compiled ruby parser: \"%s\"", name, format));
+                    } else {
+                        logger.info(String.format("%s: Failed to convert ruby parser to java parser: \"%s\", Use ruby parser as is", name, format));
+                    }
                 } else {
                     logger.debug(String.format("%s: Convert ruby parser \"%s\" to java parser \"%s\"", name, format, javaFormat));
                     newFormatList.set(i, javaFormat);
                 }
             }
         }
-        return new TimestampParser(task.getJRuby(), newFormatList, timezone);
+        return new TimestampParser(jrubyHelperFactory, newFormatList, timezone, task.getAdaptiveFormatOrder());
     }
 
     private void buildTimestampFormatterMap()
@@ -106,9 +167,44 @@ public class ColumnCaster
     {
         String format = columnConfig.getToFormat().or(task.getDefaultToTimestampFormat());
         DateTimeZone timezone = columnConfig.getToTimeZone().or(task.getDefaultToTimeZone());
+        if (task.getTimestampFormatter().equals("java_time")) {
+            List<String> javaTimeFormatList = toJavaTimeFormatList(columnConfig.getName(), Collections.singletonList(format), false);
+            if (javaTimeFormatList != null) {
+                return TimestampFormatter.ofJavaTime(javaTimeFormatList.get(0), timezone);
+            }
+        }
+        // a format which CompiledTimestampFormatter supports is already formatted without RubyDateFormat
+        if (task.getTimestampFormatter().equals("auto_java") && format.contains("%")
+                && CompiledTimestampFormatter.compile(format, timezone) == null) {
+            String javaFormat = TimestampFormatConverter.toJavaFormatterFormat(format);
+            if (javaFormat == null) {
+                logger.info(String.format("%s: Failed to convert ruby formatter to java formatter: \"%s\", Use ruby formatter as is", columnConfig.getName(), format));
+            }
+            else {
+                logger.debug(String.format("%s: Convert ruby formatter \"%s\" to java formatter \"%s\"", columnConfig.getName(), format, javaFormat));
+                format = javaFormat;
+            }
+        }
         return new TimestampFormatter(task.getJRuby(), format, timezone);
     }
 
+    // @return null if any of formats is not convertible, then the column uses the default engine for all formats
+    private static List<String> toJavaTimeFormatList(String name, List<String> formatList, boolean forParser)
+    {
+        String kind = forParser ? "parser" : "formatter";
+        List<String> javaTimeFormatList = new ArrayList<>();
+        for (String format : formatList) {
+            String javaTimeFormat = TimestampFormatConverter.toJavaTimeFormat(format, forParser);
+            if (javaTimeFormat == null) {
+                logger.info(String.format("%s: Failed to convert \"%s\" to java_time %s, Use the default %s as is", name, format, kind, kind));
+                return null;
+            }
+            logger.debug(String.format("%s: Convert \"%s\" to java_time %s \"%s\"", name, format, kind, javaTimeFormat));
+            javaTimeFormatList.add(javaTimeFormat);
+        }
+        return javaTimeFormatList;
+    }
+
     private void buildFromTimestampUnitMap()
     {
         // columnName or jsonPath => TimestampUnit
@@ -141,105 +237,287 @@ public class ColumnCaster
         return columnConfig.getToUnit().or(task.getDefaultToTimestampUnit());
     }
 
-    public void setFromLong(Column outputColumn, long value)
+    public RecordProcessor newRecordProcessor()
     {
-        Type outputType = outputColumn.getType();
-        TimestampUnit fromUnit = fromTimestampUnitMap.get(outputColumn.getName());
-        if (outputType instanceof StringType) {
-            TimestampFormatter timestampFormatter = timestampFormatterMap.get(outputColumn.getName());
-            pageBuilder.setString(outputColumn, LongCast.asString(value, fromUnit, timestampFormatter));
-        }
-        else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, LongCast.asTimestamp(value, fromUnit));
-        }
-        else if (outputType instanceof LongType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setLong(outputColumn, LongCast.asLong(value, fromUnit, toUnit));
+        ColumnConverter[] converters = newConverters();
+        if (task.getRecordProcessor().equals("generated")) {
+            RecordProcessor recordProcessor = RecordProcessorGenerator.generate(converters);
+            if (recordProcessor != null) {
+                return recordProcessor;
+            }
         }
-        else if (outputType instanceof DoubleType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setDouble(outputColumn, LongCast.asDouble(value, fromUnit, toUnit));
+        return new ConverterRecordProcessor(converters);
+    }
+
+    // converters indexed by column index, built once so that no lookups or type tests are required per record
+    public ColumnConverter[] newConverters()
+    {
+        ColumnConverter[] converters = new ColumnConverter[inputSchema.getColumnCount()];
+        for (Column inputColumn : inputSchema.getColumns()) {
+            Column outputColumn = outputSchema.getColumn(inputColumn.getIndex());
+            ColumnConverter converter = newConverter(inputColumn, outputColumn);
+            if (task.getMetrics() && converter instanceof ColumnConverter.CastConverter) {
+                ColumnConverter.CastConverter castConverter = (ColumnConverter.CastConverter) converter;
+                ColumnMetrics metrics = new ColumnMetrics(castConverter.getInvalidValueHandler());
+                columnMetricsList.add(metrics);
+                converter = new ColumnConverter.Measured(castConverter, metrics);
+            }
+            converters[inputColumn.getIndex()] = converter;
         }
-        else {
-            assert false;
+        return converters;
+    }
+
+    // converters which copy records of the schema as is
+    public static ColumnConverter[] newPassThroughConverters(Schema schema)
+    {
+        ColumnConverter[] converters = new ColumnConverter[schema.getColumnCount()];
+        for (Column column : schema.getColumns()) {
+            int index = column.getIndex();
+            Type type = column.getType();
+            if (type instanceof BooleanType) {
+                converters[index] = new ColumnConverter.BooleanPassThrough(index);
+            }
+            else if (type instanceof LongType) {
+                converters[index] = new ColumnConverter.LongPassThrough(index);
+            }
+            else if (type instanceof DoubleType) {
+                converters[index] = new ColumnConverter.DoublePassThrough(index);
+            }
+            else if (type instanceof StringType) {
+                converters[index] = new ColumnConverter.StringPassThrough(index);
+            }
+            else if (type instanceof TimestampType) {
+                converters[index] = new ColumnConverter.TimestampPassThrough(index);
+            }
+            else if (type instanceof JsonType) {
+                converters[index] = new ColumnConverter.JsonPassThrough(index);
+            }
+            else {
+                throw new ConfigException(String.format("copying %s is not available: \"%s\"", type, column.getName()));
+            }
         }
+        return converters;
     }
 
-    public void setFromDouble(Column outputColumn, double value)
+    private ColumnConverter newConverter(Column inputColumn, Column outputColumn)
     {
+        int index = inputColumn.getIndex();
+        String name = outputColumn.getName();
+        Type inputType = inputColumn.getType();
         Type outputType = outputColumn.getType();
-        TimestampUnit fromUnit = fromTimestampUnitMap.get(outputColumn.getName());
-        if (outputType instanceof StringType) {
-            TimestampFormatter timestampFormatter = timestampFormatterMap.get(outputColumn.getName());
-            pageBuilder.setString(outputColumn, DoubleCast.asString(value, fromUnit, timestampFormatter));
+        InvalidValueHandler invalidValueHandler = invalidValueHandlerMap.get(name);
+        if (invalidValueHandler == null) {
+            invalidValueHandler = new InvalidValueHandler(name, task);
+            invalidValueHandlerMap.put(name, invalidValueHandler);
+        }
+
+        if (inputType instanceof BooleanType) {
+            return new ColumnConverter.BooleanPassThrough(index);
+        }
+        else if (inputType instanceof LongType) {
+            if (!shouldCast(name)) {
+                return new ColumnConverter.LongPassThrough(index);
+            }
+            TimestampUnit fromUnit = fromTimestampUnitMap.get(name);
+            if (outputType instanceof StringType) {
+                return new ColumnConverter.LongToString(index, invalidValueHandler, fromUnit, timestampFormatterMap.get(name));
+            }
+            else if (outputType instanceof TimestampType) {
+                return new ColumnConverter.LongToTimestamp(index, invalidValueHandler, fromUnit);
+            }
+            else if (outputType instanceof LongType) {
+                return new ColumnConverter.LongToLong(index, invalidValueHandler, fromUnit, toTimestampUnitMap.get(name));
+            }
+            else if (outputType instanceof DoubleType) {
+                return new ColumnConverter.LongToDouble(index, invalidValueHandler, fromUnit, toTimestampUnitMap.get(name));
+            }
         }
-        else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, DoubleCast.asTimestamp(value, fromUnit));
+        else if (inputType instanceof DoubleType) {
+            if (!shouldCast(name)) {
+                return new ColumnConverter.DoublePassThrough(index);
+            }
+            TimestampUnit fromUnit = fromTimestampUnitMap.get(name);
+            if (outputType instanceof StringType) {
+                return new ColumnConverter.DoubleToString(index, invalidValueHandler, fromUnit, timestampFormatterMap.get(name));
+            }
+            else if (outputType instanceof TimestampType) {
+                return new ColumnConverter.DoubleToTimestamp(index, invalidValueHandler, fromUnit);
+            }
+            else if (outputType instanceof LongType) {
+                return new ColumnConverter.DoubleToLong(index, invalidValueHandler, fromUnit, toTimestampUnitMap.get(name));
+            }
+            else if (outputType instanceof DoubleType) {
+                return new ColumnConverter.DoubleToDouble(index, invalidValueHandler, fromUnit, toTimestampUnitMap.get(name));
+            }
         }
-        else if (outputType instanceof LongType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setLong(outputColumn, DoubleCast.asLong(value, fromUnit, toUnit));
+        else if (inputType instanceof StringType) {
+            if (!shouldCast(name)) {
+                return new ColumnConverter.StringPassThrough(index);
+            }
+            TimestampParser timestampParser = timestampParserMap.get(name);
+            if (outputType instanceof StringType) {
+                return new ColumnConverter.StringToString(index, invalidValueHandler, timestampParser, timestampFormatterMap.get(name),
+                        stringCacheMap.get(name));
+            }
+            else if (outputType instanceof TimestampType) {
+                return new ColumnConverter.StringToTimestamp(index, invalidValueHandler, timestampParser);
+            }
+            else if (outputType instanceof LongType) {
+                return new ColumnConverter.StringToLong(index, invalidValueHandler, timestampParser, toTimestampUnitMap.get(name));
+            }
+            else if (outputType instanceof DoubleType) {
+                return new ColumnConverter.StringToDouble(index, invalidValueHandler, timestampParser, toTimestampUnitMap.get(name));
+            }
         }
-        else if (outputType instanceof DoubleType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setDouble(outputColumn, DoubleCast.asDouble(value, fromUnit, toUnit));
+        else if (inputType instanceof TimestampType) {
+            if (!shouldCast(name) || outputType instanceof TimestampType) {
+                return new ColumnConverter.TimestampPassThrough(index);
+            }
+            if (outputType instanceof StringType) {
+                return new ColumnConverter.TimestampToString(index, invalidValueHandler, timestampFormatterMap.get(name));
+            }
+            else if (outputType instanceof LongType) {
+                return new ColumnConverter.TimestampToLong(index, invalidValueHandler, toTimestampUnitMap.get(name));
+            }
+            else if (outputType instanceof DoubleType) {
+                return new ColumnConverter.TimestampToDouble(index, invalidValueHandler, toTimestampUnitMap.get(name));
+            }
         }
-        else {
-            assert false;
+        else if (inputType instanceof JsonType) {
+            JsonPathNode rootNode = jsonVisitor.getRootNode(name);
+            if (!shouldCast(name) || rootNode == null) {
+                return new ColumnConverter.JsonPassThrough(index);
+            }
+            return new ColumnConverter.JsonToJson(index, invalidValueHandler, jsonVisitor, rootNode);
         }
+        throw new ConfigException(String.format("casting from %s to %s is not available: \"%s\"", inputType, outputType, name));
     }
 
-    public void setFromString(Column outputColumn, String value)
+    private void buildCacheMap()
     {
-        Type outputType = outputColumn.getType();
-        TimestampParser timestampParser = timestampParserMap.get(outputColumn.getName());
-        if (outputType instanceof StringType) {
-            TimestampFormatter timestampFormatter = timestampFormatterMap.get(outputColumn.getName());
-            pageBuilder.setString(outputColumn, StringCast.asString(value, timestampParser, timestampFormatter));
-        }
-        else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, StringCast.asTimestamp(value, timestampParser));
+        // string => string column caches formatted strings, others cache parsed timestamps in parsers
+        for (ColumnConfig columnConfig : task.getColumns()) {
+            int cacheSize = columnConfig.getCacheSize();
+            if (cacheSize <= 0) {
+                continue;
+            }
+            String name = columnConfig.getName();
+            if (isStringToString(columnConfig)) {
+                ValueCache<String, ValueCache.Entry<String>> cache = ValueCache.create(columnConfig.getCachePolicy(), cacheSize);
+                this.stringCacheMap.put(name, cache);
+            }
+            else {
+                ValueCache<String, ValueCache.Entry<Timestamp>> cache = ValueCache.create(columnConfig.getCachePolicy(), cacheSize);
+                timestampParserMap.get(name).setCache(cache);
+            }
         }
-        else if (outputType instanceof LongType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setLong(outputColumn, StringCast.asLong(value, timestampParser, toUnit));
+    }
+
+    private boolean isStringToString(ColumnConfig columnConfig)
+    {
+        String name = columnConfig.getName();
+        return !PathCompiler.isProbablyJsonPath(name) &&
+                inputSchema.lookupColumn(name).getType() instanceof StringType &&
+                columnConfig.getType() instanceof StringType;
+    }
+
+    public void finish()
+    {
+        finish(Collections.singletonList(this));
+    }
+
+    public ConversionMetrics getMetrics()
+    {
+        return getMetrics(Collections.singletonList(this));
+    }
+
+    // logs summaries once for casters of workers of parallelism, which share invalid value handlers
+    static void finish(List<ColumnCaster> casters)
+    {
+        ColumnCaster first = casters.get(0);
+        for (InvalidValueHandler invalidValueHandler : first.invalidValueHandlerMap.values()) {
+            invalidValueHandler.finish();
         }
-        else if (outputType instanceof DoubleType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setDouble(outputColumn, StringCast.asDouble(value, timestampParser, toUnit));
+        for (ColumnConfig columnConfig : first.task.getColumns()) {
+            String name = columnConfig.getName();
+            logCacheHitRate(name, casters);
         }
-        else {
-            assert false;
+        for (Map.Entry<String, TimestampParser> entry : first.timestampParserMap.entrySet()) {
+            String name = entry.getKey();
+            if (first.task.getAdaptiveFormatOrder()) {
+                logFormatHitCounts(name, casters);
+            }
+            else if (entry.getValue().isAutoFormat()) {
+                // workers detect formats from their own values
+                LinkedHashSet<String> formats = new LinkedHashSet<>();
+                for (ColumnCaster caster : casters) {
+                    formats.addAll(caster.timestampParserMap.get(name).getFormatList());
+                }
+                logger.info(String.format("%s: formats detected by auto: %s", name, new ArrayList<>(formats)));
+            }
         }
     }
 
-    public void setFromTimestamp(Column outputColumn, Timestamp value)
+    // merged over casters of workers of parallelism
+    static ConversionMetrics getMetrics(List<ColumnCaster> casters)
     {
-        Type outputType = outputColumn.getType();
-        if (outputType instanceof StringType) {
-            TimestampFormatter timestampFormatter = timestampFormatterMap.get(outputColumn.getName());
-            pageBuilder.setString(outputColumn, TimestampCast.asString(value, timestampFormatter));
-        }
-        else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, value);
+        ConversionMetrics metrics = new ConversionMetrics();
+        for (ColumnCaster caster : casters) {
+            for (ColumnMetrics columnMetrics : caster.columnMetricsList) {
+                metrics.addColumn(columnMetrics);
+            }
+            for (ColumnConfig columnConfig : caster.task.getColumns()) {
+                String name = columnConfig.getName();
+                metrics.addFormatHits(name, caster.timestampParserMap.get(name));
+            }
         }
-        else if (outputType instanceof LongType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setLong(outputColumn, TimestampCast.asLong(value, toUnit));
+        for (InvalidValueHandler invalidValueHandler : casters.get(0).invalidValueHandlerMap.values()) {
+            metrics.addInvalidCount(invalidValueHandler.getName(), invalidValueHandler.getInvalidCount());
         }
-        else if (outputType instanceof DoubleType) {
-            TimestampUnit toUnit = toTimestampUnitMap.get(outputColumn.getName());
-            pageBuilder.setDouble(outputColumn, TimestampCast.asDouble(value, toUnit));
+        return metrics;
+    }
+
+    private static void logCacheHitRate(String name, List<ColumnCaster> casters)
+    {
+        long hitCount = 0;
+        long missCount = 0;
+        boolean cached = false;
+        for (ColumnCaster caster : casters) {
+            ValueCache<?, ?> cache = caster.stringCacheMap.containsKey(name) ? caster.stringCacheMap.get(name) : caster.timestampParserMap.get(name).getCache();
+            if (cache != null) {
+                cached = true;
+                hitCount += cache.getHitCount();
+                missCount += cache.getMissCount();
+            }
         }
-        else {
-            assert false;
+        if (!cached) {
+            return;
         }
+        long total = hitCount + missCount;
+        double hitRate = total == 0 ? 0.0 : 100.0 * hitCount / total;
+        logger.info(String.format("%s: cache hits %d/%d (%.1f%%)", name, hitCount, total, hitRate));
     }
 
-    public void setFromJson(Column outputColumn, Value value)
+    // in the final order of the first caster, formats only others hit follow
+    private static void logFormatHitCounts(String name, List<ColumnCaster> casters)
     {
-        String pathFragment = PropertyPathToken.getPathFragment(outputColumn.getName());
-        String jsonPath = new StringBuilder("$").append(pathFragment).toString();
-        pageBuilder.setJson(outputColumn, jsonVisitor.visit(jsonPath, value));
+        Map<String, Long> hits = new LinkedHashMap<>();
+        for (ColumnCaster caster : casters) {
+            TimestampParser parser = caster.timestampParserMap.get(name);
+            List<String> formatList = parser.getFormatList();
+            long[] hitCounts = parser.getFormatHitCounts();
+            for (int i : parser.getFormatOrder()) {
+                Long hitCount = hits.get(formatList.get(i));
+                hits.put(formatList.get(i), (hitCount == null ? 0L : hitCount) + hitCounts[i]);
+            }
+        }
+        if (hits.size() < 2) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : hits.entrySet()) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(String.format("\"%s\"=%d", entry.getKey(), entry.getValue()));
+        }
+        logger.info(String.format("%s: format hits in the final order: %s", name, sb.toString()));
     }
 }
@@ -0,0 +1,525 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.filter.timestamp_format.cast.DoubleCast;
+import org.embulk.filter.timestamp_format.cast.LongCast;
+import org.embulk.filter.timestamp_format.cast.StringCast;
+import org.embulk.filter.timestamp_format.cast.TimestampCast;
+import org.embulk.spi.DataException;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+
+// Converts a column of the current record of PageReader into PageBuilder.
+// A converter is built once per column by ColumnCaster.newConverter with its parser, formatter, and units bound,
+// so that no map lookups or type dispatches are required per record.
+// Input and output columns have the same index.
+public abstract class ColumnConverter
+{
+    protected final int index;
+
+    protected ColumnConverter(int index)
+    {
+        this.index = index;
+    }
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public abstract void convert(PageReader pageReader, PageBuilder pageBuilder);
+
+    public static final class BooleanPassThrough extends ColumnConverter
+    {
+        public BooleanPassThrough(int index)
+        {
+            super(index);
+        }
+
+        @Override
+        public void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                pageBuilder.setNull(index);
+            }
+            else {
+                pageBuilder.setBoolean(index, pageReader.getBoolean(index));
+            }
+        }
+    }
+
+    public static final class LongPassThrough extends ColumnConverter
+    {
+        public LongPassThrough(int index)
+        {
+            super(index);
+        }
+
+        @Override
+        public void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                pageBuilder.setNull(index);
+            }
+            else {
+                pageBuilder.setLong(index, pageReader.getLong(index));
+            }
+        }
+    }
+
+    public static final class DoublePassThrough extends ColumnConverter
+    {
+        public DoublePassThrough(int index)
+        {
+            super(index);
+        }
+
+        @Override
+        public void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                pageBuilder.setNull(index);
+            }
+            else {
+                pageBuilder.setDouble(index, pageReader.getDouble(index));
+            }
+        }
+    }
+
+    public static final class StringPassThrough extends ColumnConverter
+    {
+        public StringPassThrough(int index)
+        {
+            super(index);
+        }
+
+        @Override
+        public void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                pageBuilder.setNull(index);
+            }
+            else {
+                pageBuilder.setString(index, pageReader.getString(index));
+            }
+        }
+    }
+
+    public static final class TimestampPassThrough extends ColumnConverter
+    {
+        public TimestampPassThrough(int index)
+        {
+            super(index);
+        }
+
+        @Override
+        public void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                pageBuilder.setNull(index);
+            }
+            else {
+                pageBuilder.setTimestamp(index, pageReader.getTimestamp(index));
+            }
+        }
+    }
+
+    public static final class JsonPassThrough extends ColumnConverter
+    {
+        public JsonPassThrough(int index)
+        {
+            super(index);
+        }
+
+        @Override
+        public void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                pageBuilder.setNull(index);
+            }
+            else {
+                pageBuilder.setJson(index, pageReader.getJson(index));
+            }
+        }
+    }
+
+    // counts values of a cast column into ColumnMetrics, used only if metrics is enabled
+    public static final class Measured extends ColumnConverter
+    {
+        private final CastConverter converter;
+        private final ColumnMetrics metrics;
+
+        public Measured(CastConverter converter, ColumnMetrics metrics)
+        {
+            super(converter.getIndex());
+            this.converter = converter;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                metrics.nullCount++;
+                converter.convert(pageReader, pageBuilder);
+                return;
+            }
+            if (++metrics.valueCount % ColumnMetrics.SAMPLE_INTERVAL != 0) {
+                converter.convert(pageReader, pageBuilder);
+                return;
+            }
+            long start = System.nanoTime();
+            converter.convert(pageReader, pageBuilder);
+            metrics.sampledNanos += System.nanoTime() - start;
+            metrics.sampledCount++;
+        }
+    }
+
+    // sets null for a null input, and also for an invalid input unless stop_on_invalid_record is true
+    public abstract static class CastConverter extends ColumnConverter
+    {
+        private final InvalidValueHandler invalidValueHandler;
+        private final boolean stopOnInvalidRecord;
+
+        protected CastConverter(int index, InvalidValueHandler invalidValueHandler)
+        {
+            super(index);
+            this.invalidValueHandler = invalidValueHandler;
+            this.stopOnInvalidRecord = invalidValueHandler.isStopOnInvalidRecord();
+        }
+
+        public InvalidValueHandler getInvalidValueHandler()
+        {
+            return invalidValueHandler;
+        }
+
+        @Override
+        public final void convert(PageReader pageReader, PageBuilder pageBuilder)
+        {
+            if (pageReader.isNull(index)) {
+                pageBuilder.setNull(index);
+            }
+            else if (stopOnInvalidRecord) {
+                cast(pageReader, pageBuilder);
+            }
+            else {
+                try {
+                    cast(pageReader, pageBuilder);
+                }
+                catch (final DataException ex) {
+                    invalidValueHandler.handle(ex);
+                    pageBuilder.setNull(index);
+                }
+            }
+        }
+
+        protected abstract void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException;
+    }
+
+    public static final class LongToString extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+        private final TimestampFormatter formatter;
+
+        public LongToString(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit, TimestampFormatter formatter)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+            this.formatter = formatter;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setString(index, LongCast.asString(pageReader.getLong(index), fromUnit, formatter));
+        }
+    }
+
+    public static final class LongToTimestamp extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+
+        public LongToTimestamp(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setTimestamp(index, LongCast.asTimestamp(pageReader.getLong(index), fromUnit));
+        }
+    }
+
+    public static final class LongToLong extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+        private final TimestampUnit toUnit;
+
+        public LongToLong(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setLong(index, LongCast.asLong(pageReader.getLong(index), fromUnit, toUnit));
+        }
+    }
+
+    public static final class LongToDouble extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+        private final TimestampUnit toUnit;
+
+        public LongToDouble(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setDouble(index, LongCast.asDouble(pageReader.getLong(index), fromUnit, toUnit));
+        }
+    }
+
+    public static final class DoubleToString extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+        private final TimestampFormatter formatter;
+
+        public DoubleToString(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit, TimestampFormatter formatter)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+            this.formatter = formatter;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setString(index, DoubleCast.asString(pageReader.getDouble(index), fromUnit, formatter));
+        }
+    }
+
+    public static final class DoubleToTimestamp extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+
+        public DoubleToTimestamp(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setTimestamp(index, DoubleCast.asTimestamp(pageReader.getDouble(index), fromUnit));
+        }
+    }
+
+    public static final class DoubleToLong extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+        private final TimestampUnit toUnit;
+
+        public DoubleToLong(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setLong(index, DoubleCast.asLong(pageReader.getDouble(index), fromUnit, toUnit));
+        }
+    }
+
+    public static final class DoubleToDouble extends CastConverter
+    {
+        private final TimestampUnit fromUnit;
+        private final TimestampUnit toUnit;
+
+        public DoubleToDouble(int index, InvalidValueHandler invalidValueHandler, TimestampUnit fromUnit, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.fromUnit = fromUnit;
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setDouble(index, DoubleCast.asDouble(pageReader.getDouble(index), fromUnit, toUnit));
+        }
+    }
+
+    public static final class StringToString extends CastConverter
+    {
+        private final TimestampParser parser;
+        private final TimestampFormatter formatter;
+        private final ValueCache<String, ValueCache.Entry<String>> cache; // null if not cached
+
+        public StringToString(int index, InvalidValueHandler invalidValueHandler, TimestampParser parser, TimestampFormatter formatter,
+                              ValueCache<String, ValueCache.Entry<String>> cache)
+        {
+            super(index, invalidValueHandler);
+            this.parser = parser;
+            this.formatter = formatter;
+            this.cache = cache;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            String value = pageReader.getString(index);
+            if (cache == null) {
+                pageBuilder.setString(index, StringCast.asString(value, parser, formatter));
+                return;
+            }
+            ValueCache.Entry<String> entry = cache.get(value);
+            if (entry == null) {
+                entry = new ValueCache.Entry<>(StringCast.asString(value, parser, formatter), parser.getLastFormat());
+                cache.put(value, entry);
+            }
+            else {
+                parser.recordCachedHit(entry.getFormat());
+            }
+            pageBuilder.setString(index, entry.getValue());
+        }
+    }
+
+    public static final class StringToTimestamp extends CastConverter
+    {
+        private final TimestampParser parser;
+
+        public StringToTimestamp(int index, InvalidValueHandler invalidValueHandler, TimestampParser parser)
+        {
+            super(index, invalidValueHandler);
+            this.parser = parser;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setTimestamp(index, StringCast.asTimestamp(pageReader.getString(index), parser));
+        }
+    }
+
+    public static final class StringToLong extends CastConverter
+    {
+        private final TimestampParser parser;
+        private final TimestampUnit toUnit;
+
+        public StringToLong(int index, InvalidValueHandler invalidValueHandler, TimestampParser parser, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.parser = parser;
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setLong(index, StringCast.asLong(pageReader.getString(index), parser, toUnit));
+        }
+    }
+
+    public static final class StringToDouble extends CastConverter
+    {
+        private final TimestampParser parser;
+        private final TimestampUnit toUnit;
+
+        public StringToDouble(int index, InvalidValueHandler invalidValueHandler, TimestampParser parser, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.parser = parser;
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setDouble(index, StringCast.asDouble(pageReader.getString(index), parser, toUnit));
+        }
+    }
+
+    public static final class TimestampToString extends CastConverter
+    {
+        private final TimestampFormatter formatter;
+
+        public TimestampToString(int index, InvalidValueHandler invalidValueHandler, TimestampFormatter formatter)
+        {
+            super(index, invalidValueHandler);
+            this.formatter = formatter;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setString(index, TimestampCast.asString(pageReader.getTimestamp(index), formatter));
+        }
+    }
+
+    public static final class TimestampToLong extends CastConverter
+    {
+        private final TimestampUnit toUnit;
+
+        public TimestampToLong(int index, InvalidValueHandler invalidValueHandler, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setLong(index, TimestampCast.asLong(pageReader.getTimestamp(index), toUnit));
+        }
+    }
+
+    public static final class TimestampToDouble extends CastConverter
+    {
+        private final TimestampUnit toUnit;
+
+        public TimestampToDouble(int index, InvalidValueHandler invalidValueHandler, TimestampUnit toUnit)
+        {
+            super(index, invalidValueHandler);
+            this.toUnit = toUnit;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setDouble(index, TimestampCast.asDouble(pageReader.getTimestamp(index), toUnit));
+        }
+    }
+
+    public static final class JsonToJson extends CastConverter
+    {
+        private final JsonVisitor jsonVisitor;
+        private final JsonPathNode rootNode;
+
+        public JsonToJson(int index, InvalidValueHandler invalidValueHandler, JsonVisitor jsonVisitor, JsonPathNode rootNode)
+        {
+            super(index, invalidValueHandler);
+            this.jsonVisitor = jsonVisitor;
+            this.rootNode = rootNode;
+        }
+
+        @Override
+        protected void cast(PageReader pageReader, PageBuilder pageBuilder) throws DataException
+        {
+            pageBuilder.setJson(index, jsonVisitor.visit(rootNode, pageReader.getJson(index)));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.embulk.filter.timestamp_format;
+
+// Counters of a cast column updated by ColumnConverter.Measured.
+// Time is measured for every SAMPLE_INTERVAL-th value to keep the overhead of System.nanoTime small
+public class ColumnMetrics
+{
+    static final int SAMPLE_INTERVAL = 64;
+    private final InvalidValueHandler invalidValueHandler;
+    long valueCount = 0;
+    long nullCount = 0;
+    long sampledCount = 0;
+    long sampledNanos = 0;
+
+    ColumnMetrics(InvalidValueHandler invalidValueHandler)
+    {
+        this.invalidValueHandler = invalidValueHandler;
+    }
+
+    public String getName()
+    {
+        return invalidValueHandler.getName();
+    }
+
+    // includes invalid values
+    public long getValueCount()
+    {
+        return valueCount;
+    }
+
+    public long getNullCount()
+    {
+        return nullCount;
+    }
+
+    // time spent to convert values estimated from sampled values
+    public long getEstimatedNanos()
+    {
+        return sampledCount == 0 ? 0 : (long) ((double) sampledNanos * valueCount / sampledCount);
+    }
+}
@@ -0,0 +1,530 @@
+package org.embulk.filter.timestamp_format;
+
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Formatter compiled from a ruby strftime format such as "%Y-%m-%d %H:%M:%S.%6N %z".
+//
+// Calendar fields are computed from epoch seconds with plain arithmetic and appended to a StringBuilder,
+// without DateTime, RubyDateFormat, or any other intermediate objects.
+// Output is the same with org.jruby.util.RubyDateFormat. Formats containing directives or flags which are
+// not supported here are not compiled, and format() returns false for values out of the supported range
+// (years other than 1 - 9999, time zone offsets with seconds) so that TimestampFormatter falls back to
+// RubyDateFormat.
+public class CompiledTimestampFormatter
+{
+    private static final int LITERAL = 0;
+    private static final int YEAR = 1;
+    private static final int YEAR_OF_CENTURY = 2;
+    private static final int MONTH = 3;
+    private static final int DAY = 4;
+    private static final int DAY_OF_YEAR = 5;
+    private static final int HOUR = 6;
+    private static final int HOUR_OF_HALFDAY = 7;
+    private static final int MINUTE = 8;
+    private static final int SECOND = 9;
+    private static final int DAY_OF_WEEK_MONDAY = 10; // %u, 1 - 7
+    private static final int DAY_OF_WEEK_SUNDAY = 11; // %w, 0 - 6
+    private static final int EPOCH_SECOND = 12;
+    private static final int FRACTION = 13; // width is the number of digits
+    private static final int OFFSET = 14; // width is the number of colons
+    private static final int ZONE_NAME = 15;
+    private static final int WEEKDAY_SHORT = 16;
+    private static final int WEEKDAY_LONG = 17;
+    private static final int MONTH_SHORT = 18;
+    private static final int MONTH_LONG = 19;
+    private static final int MERIDIAN = 20;
+    private static final int MERIDIAN_LOWER_CASE = 21;
+
+    private static final String[] WEEKDAYS = {
+        "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday",
+    };
+    private static final String[] SHORT_WEEKDAYS = {
+        "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat",
+    };
+    private static final String[] MONTHS = {
+        "January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December",
+    };
+    private static final String[] SHORT_MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec",
+    };
+
+    private static final class Token
+    {
+        private final int kind;
+        private final int width;
+        private final char padder;
+        private final boolean upcase;
+        private final String literal;
+
+        private Token(int kind, int width, char padder, boolean upcase, String literal)
+        {
+            this.kind = kind;
+            this.width = width;
+            this.padder = padder;
+            this.upcase = upcase;
+            this.literal = literal;
+        }
+    }
+
+    private final int[] kinds;
+    private final int[] widths;
+    private final char[] padders;
+    private final boolean[] upcases;
+    private final String[] literals;
+    private final boolean hasOffset;
+    private final boolean dateOnly;
+    private final int[] fractionWidths;
+    private final int[] fractionPositions; // positions in the buffer where fractions are appended by the last format()
+    private final DateTimeZone toTimeZone;
+
+    private CompiledTimestampFormatter(List<Token> tokens, DateTimeZone toTimeZone)
+    {
+        int size = tokens.size();
+        this.kinds = new int[size];
+        this.widths = new int[size];
+        this.padders = new char[size];
+        this.upcases = new boolean[size];
+        this.literals = new String[size];
+        boolean hasOffset = false;
+        boolean dateOnly = true;
+        List<Integer> fractionWidths = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Token token = tokens.get(i);
+            kinds[i] = token.kind;
+            widths[i] = token.width;
+            padders[i] = token.padder;
+            upcases[i] = token.upcase;
+            literals[i] = token.literal;
+            hasOffset |= token.kind == OFFSET;
+            dateOnly &= isDateField(token.kind);
+            if (token.kind == FRACTION) {
+                fractionWidths.add(token.width);
+            }
+        }
+        this.hasOffset = hasOffset;
+        this.dateOnly = dateOnly;
+        this.fractionWidths = new int[fractionWidths.size()];
+        for (int i = 0; i < fractionWidths.size(); i++) {
+            this.fractionWidths[i] = fractionWidths.get(i);
+        }
+        this.fractionPositions = new int[fractionWidths.size()];
+        this.toTimeZone = toTimeZone;
+    }
+
+    // @return returns null if the format has directives or flags which are not supported
+    public static CompiledTimestampFormatter compile(String format, DateTimeZone toTimeZone)
+    {
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            boolean noPadding = false;
+            boolean upcase = false;
+            char padder = 0;
+            int width = -1;
+            int colons = 0;
+            boolean hasFlags = false;
+            flags:
+            while (i < format.length()) {
+                switch (format.charAt(i)) {
+                    case '-':
+                        noPadding = true;
+                        break;
+                    case '_':
+                        padder = ' ';
+                        break;
+                    case '0':
+                        padder = '0';
+                        break;
+                    case '^':
+                        upcase = true;
+                        break;
+                    default:
+                        break flags;
+                }
+                hasFlags = true;
+                i++;
+            }
+            while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                width = (width < 0 ? 0 : width * 10) + (format.charAt(i++) - '0');
+            }
+            while (i < format.length() && format.charAt(i) == ':') {
+                colons++;
+                i++;
+            }
+            if (i >= format.length()) {
+                return null;
+            }
+            char directive = format.charAt(i++);
+            if (colons != 0 && directive != 'z') {
+                return null;
+            }
+
+            Token token;
+            switch (directive) {
+                case 'Y':
+                    token = numeric(YEAR, 4, '0', noPadding, padder, width);
+                    break;
+                case 'y':
+                    token = numeric(YEAR_OF_CENTURY, 2, '0', noPadding, padder, width);
+                    break;
+                case 'm':
+                    token = numeric(MONTH, 2, '0', noPadding, padder, width);
+                    break;
+                case 'd':
+                    token = numeric(DAY, 2, '0', noPadding, padder, width);
+                    break;
+                case 'e':
+                    token = numeric(DAY, 2, ' ', noPadding, padder, width);
+                    break;
+                case 'j':
+                    token = numeric(DAY_OF_YEAR, 3, '0', noPadding, padder, width);
+                    break;
+                case 'H':
+                    token = numeric(HOUR, 2, '0', noPadding, padder, width);
+                    break;
+                case 'k':
+                    token = numeric(HOUR, 2, ' ', noPadding, padder, width);
+                    break;
+                case 'I':
+                    token = numeric(HOUR_OF_HALFDAY, 2, '0', noPadding, padder, width);
+                    break;
+                case 'l':
+                    token = numeric(HOUR_OF_HALFDAY, 2, ' ', noPadding, padder, width);
+                    break;
+                case 'M':
+                    token = numeric(MINUTE, 2, '0', noPadding, padder, width);
+                    break;
+                case 'S':
+                    token = numeric(SECOND, 2, '0', noPadding, padder, width);
+                    break;
+                case 'u':
+                    token = numeric(DAY_OF_WEEK_MONDAY, 1, '0', noPadding, padder, width);
+                    break;
+                case 'w':
+                    token = numeric(DAY_OF_WEEK_SUNDAY, 1, '0', noPadding, padder, width);
+                    break;
+                case 's':
+                    token = numeric(EPOCH_SECOND, 1, '0', noPadding, padder, width);
+                    break;
+                case 'L':
+                case 'N':
+                    if (hasFlags || width == 0 || width > 9) {
+                        return null;
+                    }
+                    token = new Token(FRACTION, width < 0 ? (directive == 'L' ? 3 : 9) : width, '0', false, null);
+                    break;
+                case 'z':
+                    if (hasFlags || width >= 0 || colons > 2) {
+                        return null;
+                    }
+                    token = new Token(OFFSET, colons, '0', false, null);
+                    break;
+                case 'Z':
+                    token = text(ZONE_NAME, noPadding, padder, upcase, width);
+                    break;
+                case 'a':
+                    token = text(WEEKDAY_SHORT, noPadding, padder, upcase, width);
+                    break;
+                case 'A':
+                    token = text(WEEKDAY_LONG, noPadding, padder, upcase, width);
+                    break;
+                case 'b':
+                case 'h':
+                    token = text(MONTH_SHORT, noPadding, padder, upcase, width);
+                    break;
+                case 'B':
+                    token = text(MONTH_LONG, noPadding, padder, upcase, width);
+                    break;
+                case 'p':
+                    token = text(MERIDIAN, noPadding, padder, upcase, width);
+                    break;
+                case 'P':
+                    token = text(MERIDIAN_LOWER_CASE, noPadding, padder, upcase, width);
+                    break;
+                case '%':
+                case 'n':
+                case 't':
+                    if (hasFlags || width >= 0) {
+                        return null;
+                    }
+                    literal.append(directive == '%' ? '%' : directive == 'n' ? '\n' : '\t');
+                    continue;
+                case 'F':
+                case 'T':
+                case 'D':
+                case 'R':
+                case 'r':
+                    // composite directives are supported only without flags and width
+                    if (hasFlags || width >= 0) {
+                        return null;
+                    }
+                    format = format.substring(0, i) + expandComposite(directive) + format.substring(i);
+                    continue;
+                default:
+                    return null;
+            }
+            flushLiteral(tokens, literal);
+            tokens.add(token);
+        }
+        flushLiteral(tokens, literal);
+        return new CompiledTimestampFormatter(tokens, toTimeZone);
+    }
+
+    private static String expandComposite(char directive)
+    {
+        switch (directive) {
+            case 'F':
+                return "%Y-%m-%d";
+            case 'T':
+                return "%H:%M:%S";
+            case 'D':
+                return "%m/%d/%y";
+            case 'R':
+                return "%H:%M";
+            default:
+                return "%I:%M:%S %p";
+        }
+    }
+
+    private static Token numeric(int kind, int defaultWidth, char defaultPadder, boolean noPadding, char padder, int width)
+    {
+        return new Token(kind,
+                noPadding ? 0 : (width >= 0 ? width : defaultWidth),
+                padder != 0 ? padder : defaultPadder,
+                false, null);
+    }
+
+    private static Token text(int kind, boolean noPadding, char padder, boolean upcase, int width)
+    {
+        return new Token(kind,
+                noPadding ? 0 : (width >= 0 ? width : 0),
+                padder != 0 ? padder : ' ',
+                upcase, null);
+    }
+
+    private static void flushLiteral(List<Token> tokens, StringBuilder literal)
+    {
+        if (literal.length() > 0) {
+            tokens.add(new Token(LITERAL, 0, ' ', false, literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    private static boolean isDateField(int kind)
+    {
+        switch (kind) {
+            case HOUR:
+            case HOUR_OF_HALFDAY:
+            case MINUTE:
+            case SECOND:
+            case EPOCH_SECOND:
+            case FRACTION:
+            case MERIDIAN:
+            case MERIDIAN_LOWER_CASE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // true if the output depends only on the local date and the time zone offset
+    public boolean isDateOnly()
+    {
+        return dateOnly;
+    }
+
+    public int getFractionCount()
+    {
+        return fractionWidths.length;
+    }
+
+    public int getFractionWidth(int i)
+    {
+        return fractionWidths[i];
+    }
+
+    public int getFractionPosition(int i)
+    {
+        return fractionPositions[i];
+    }
+
+    // @return returns false if the value is out of the supported range. Nothing is appended to buffer then
+    public boolean format(long epochSecond, int nano, StringBuilder buffer)
+    {
+        int offsetMillis = toTimeZone.getOffset(epochSecond * 1000);
+        if (hasOffset && offsetMillis % 60000 != 0) {
+            return false;
+        }
+        long localSecond = epochSecond + offsetMillis / 1000;
+        long epochDay = floorDiv(localSecond, 86400);
+        int secondOfDay = (int) (localSecond - epochDay * 86400);
+
+        // civil date from days since 1970-01-01 in the proleptic Gregorian calendar
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYearFromMarch = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthFromMarch = (5 * dayOfYearFromMarch + 2) / 153;
+        int day = dayOfYearFromMarch - (153 * monthFromMarch + 2) / 5 + 1;
+        int month = monthFromMarch < 10 ? monthFromMarch + 3 : monthFromMarch - 9;
+        long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+        if (year < 1 || year > 9999) {
+            return false;
+        }
+        int hour = secondOfDay / 3600;
+        int dayOfWeek = (int) floorMod(epochDay + 4, 7); // 1970-01-01 is Thursday, 0 is Sunday
+        int fractionIndex = 0;
+
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    buffer.append(literals[i]);
+                    break;
+                case YEAR:
+                    appendNumber(buffer, year, widths[i], padders[i]);
+                    break;
+                case YEAR_OF_CENTURY:
+                    appendNumber(buffer, year % 100, widths[i], padders[i]);
+                    break;
+                case MONTH:
+                    appendNumber(buffer, month, widths[i], padders[i]);
+                    break;
+                case DAY:
+                    appendNumber(buffer, day, widths[i], padders[i]);
+                    break;
+                case DAY_OF_YEAR:
+                    appendNumber(buffer, epochDay - CompiledTimestampParser.daysFromCivil((int) year, 1, 1) + 1, widths[i], padders[i]);
+                    break;
+                case HOUR:
+                    appendNumber(buffer, hour, widths[i], padders[i]);
+                    break;
+                case HOUR_OF_HALFDAY:
+                    appendNumber(buffer, hour % 12 == 0 ? 12 : hour % 12, widths[i], padders[i]);
+                    break;
+                case MINUTE:
+                    appendNumber(buffer, secondOfDay / 60 % 60, widths[i], padders[i]);
+                    break;
+                case SECOND:
+                    appendNumber(buffer, secondOfDay % 60, widths[i], padders[i]);
+                    break;
+                case DAY_OF_WEEK_MONDAY:
+                    appendNumber(buffer, dayOfWeek == 0 ? 7 : dayOfWeek, widths[i], padders[i]);
+                    break;
+                case DAY_OF_WEEK_SUNDAY:
+                    appendNumber(buffer, dayOfWeek, widths[i], padders[i]);
+                    break;
+                case EPOCH_SECOND:
+                    appendNumber(buffer, epochSecond, widths[i], padders[i]);
+                    break;
+                case FRACTION:
+                    fractionPositions[fractionIndex++] = buffer.length();
+                    appendNumber(buffer, nano / CompiledTimestampParser.POW10[9 - widths[i]], widths[i], '0');
+                    break;
+                case OFFSET:
+                    appendOffset(buffer, offsetMillis / 1000, widths[i]);
+                    break;
+                case ZONE_NAME:
+                    appendText(buffer, toTimeZone.getShortName(epochSecond * 1000), widths[i], padders[i], upcases[i]);
+                    break;
+                case WEEKDAY_SHORT:
+                    appendText(buffer, SHORT_WEEKDAYS[dayOfWeek], widths[i], padders[i], upcases[i]);
+                    break;
+                case WEEKDAY_LONG:
+                    appendText(buffer, WEEKDAYS[dayOfWeek], widths[i], padders[i], upcases[i]);
+                    break;
+                case MONTH_SHORT:
+                    appendText(buffer, SHORT_MONTHS[month - 1], widths[i], padders[i], upcases[i]);
+                    break;
+                case MONTH_LONG:
+                    appendText(buffer, MONTHS[month - 1], widths[i], padders[i], upcases[i]);
+                    break;
+                case MERIDIAN:
+                    appendText(buffer, hour < 12 ? "AM" : "PM", widths[i], padders[i], upcases[i]);
+                    break;
+                default:
+                    appendText(buffer, hour < 12 ? "am" : "pm", widths[i], padders[i], upcases[i]);
+                    break;
+            }
+        }
+        return true;
+    }
+
+    // same with TimeOutputFormatter.formatNumber of JRuby
+    static void appendNumber(StringBuilder buffer, long value, int width, char padder)
+    {
+        int digits = value < 0 ? 1 : 0;
+        for (long v = value; ; v /= 10) {
+            digits++;
+            if (v / 10 == 0) {
+                break;
+            }
+        }
+        if (value < 0 && padder == '0') {
+            buffer.append('-');
+            for (int i = digits; i < width; i++) {
+                buffer.append('0');
+            }
+            buffer.append(-value);
+            return;
+        }
+        for (int i = digits; i < width; i++) {
+            buffer.append(padder);
+        }
+        buffer.append(value);
+    }
+
+    private static void appendText(StringBuilder buffer, String text, int width, char padder, boolean upcase)
+    {
+        for (int i = text.length(); i < width; i++) {
+            buffer.append(padder);
+        }
+        if (upcase) {
+            for (int i = 0; i < text.length(); i++) {
+                buffer.append(Character.toUpperCase(text.charAt(i)));
+            }
+        }
+        else {
+            buffer.append(text);
+        }
+    }
+
+    private static void appendOffset(StringBuilder buffer, int offsetSeconds, int colons)
+    {
+        buffer.append(offsetSeconds < 0 ? '-' : '+');
+        int abs = Math.abs(offsetSeconds);
+        appendNumber(buffer, abs / 3600, 2, '0');
+        if (colons > 0) {
+            buffer.append(':');
+        }
+        appendNumber(buffer, abs / 60 % 60, 2, '0');
+        if (colons > 1) {
+            buffer.append(':');
+            appendNumber(buffer, abs % 60, 2, '0');
+        }
+    }
+
+    private static long floorDiv(long x, long y)
+    {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    private static long floorMod(long x, long y)
+    {
+        return x - floorDiv(x, y) * y;
+    }
+}
@@ -0,0 +1,760 @@
+package org.embulk.filter.timestamp_format;
+
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Parser compiled from a fixed layout format such as "%Y-%m-%d %H:%M:%S.%N %z" or "yyyy-MM-dd HH:mm:ss.SSS",
+// or epoch seconds such as "%s" and "%Q".
+//
+// Fields are extracted at fixed widths and epoch seconds/nanos are computed with plain arithmetic,
+// without DateTime or any other intermediate objects.
+// Only the canonical form of a layout (zero-padded fields, exact literals, numeric offsets) is accepted,
+// and parse() returns false for anything else so that TimestampParser falls back to the JRuby or Joda-Time
+// parser of the same format. Therefore, results are the same with the original parsers.
+public class CompiledTimestampParser
+{
+    private static final int LITERAL = 0;
+    private static final int YEAR = 1;
+    private static final int MONTH = 2;
+    private static final int DAY = 3; // " 9" is accepted too if arg is 1, same with %d and %e of JRuby
+    private static final int HOUR = 4; // " 9" is accepted too if arg is 1, same with %H and %k of JRuby
+    private static final int MINUTE = 5;
+    private static final int SECOND = 6;
+    private static final int FRACTION = 7; // reads at most arg digits, following digits are left to the next field
+    private static final int GREEDY_FRACTION = 8; // reads all digits, fails if more than 9 digits
+    private static final int OFFSET = 9; // +hh:mm, +hhmm, or +hh:mm:ss, and UTC or Z if arg is 1
+    private static final int HOUR12 = 10; // 1-12 of %I and %l, with a space padding
+    private static final int MERIDIAN = 11; // am or pm, case insensitive
+    private static final int EPOCH = 12; // all digits of %s if arg is 0, or %Q if arg is 3
+
+    private static final long DAY_MILLIS = 86400000L;
+    private static final int MAX_EPOCH_SECOND_DIGITS = 12; // micro seconds of the JRuby helper fit in long
+
+    static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+    };
+
+    private enum Resolution
+    {
+        JRUBY,     // micro second, same with JRubyTimeParserHelper.strptimeUsec
+        JAVA,      // milli second, same with Joda-Time DateTimeFormatter
+        JAVA_NANO, // nano second, same with "nnnnnnnnn" handling of TimestampParser
+    }
+
+    private final int[] kinds;
+    private final int[] args;
+    private final Resolution resolution;
+    private final DateTimeZone defaultFromTimeZone;
+
+    // memoization of the date prefix such as "2016-05-12 " of the last parsed text
+    private final int datePrefixLength; // 0 if the layout does not start with year, month, and day
+    private final int datePrefixFieldCount;
+    private String cachedDatePrefix = null;
+    private long cachedEpochDay;
+
+    // local time range in milli seconds where defaultFromTimeZone has the constant offset cachedOffsetMillis,
+    // at least one day away from any time zone offset transition
+    private long offsetWindowFrom = 0;
+    private long offsetWindowUntil = 0;
+    private int cachedOffsetMillis;
+
+    private long epochSecond;
+    private int nano;
+
+    private CompiledTimestampParser(List<int[]> fields, Resolution resolution, DateTimeZone defaultFromTimeZone)
+    {
+        this.kinds = new int[fields.size()];
+        this.args = new int[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            kinds[i] = fields.get(i)[0];
+            args[i] = fields.get(i)[1];
+        }
+        this.resolution = resolution;
+        this.defaultFromTimeZone = defaultFromTimeZone;
+
+        int prefixLength = 0;
+        int prefixFieldCount = 0;
+        int dateFieldCount = 0;
+        while (prefixFieldCount < kinds.length && dateFieldCount < 3) {
+            int kind = kinds[prefixFieldCount];
+            if (kind == LITERAL) {
+                prefixLength += 1;
+            }
+            else if (kind == YEAR) {
+                prefixLength += 4;
+            }
+            else if (kind == MONTH || kind == DAY) {
+                prefixLength += 2;
+            }
+            else {
+                break;
+            }
+            if (kind != LITERAL) {
+                dateFieldCount++;
+            }
+            prefixFieldCount++;
+        }
+        // literals following the date belong to the prefix too
+        while (dateFieldCount == 3 && prefixFieldCount < kinds.length && kinds[prefixFieldCount] == LITERAL) {
+            prefixLength++;
+            prefixFieldCount++;
+        }
+        this.datePrefixLength = dateFieldCount == 3 ? prefixLength : 0;
+        this.datePrefixFieldCount = dateFieldCount == 3 ? prefixFieldCount : 0;
+    }
+
+    // @return returns null if the format is not a fixed layout
+    public static CompiledTimestampParser compileRubyFormat(String format, DateTimeZone defaultFromTimeZone)
+    {
+        List<int[]> fields = new ArrayList<>();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i++);
+            if (c != '%') {
+                fields.add(new int[] {LITERAL, c});
+                continue;
+            }
+            int width = 0;
+            int colons = 0;
+            while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                width = width * 10 + (format.charAt(i++) - '0');
+            }
+            while (i < format.length() && format.charAt(i) == ':') {
+                colons++;
+                i++;
+            }
+            if (i >= format.length()) {
+                return null;
+            }
+            char directive = format.charAt(i++);
+            if (directive != 'N' && width != 0) {
+                return null;
+            }
+            if (directive != 'z' && colons != 0) {
+                return null;
+            }
+            switch (directive) {
+                case 'Y':
+                    fields.add(new int[] {YEAR, 0});
+                    break;
+                case 'm':
+                    fields.add(new int[] {MONTH, 0});
+                    break;
+                case 'd':
+                case 'e':
+                    fields.add(new int[] {DAY, 1});
+                    break;
+                case 'H':
+                case 'k':
+                    fields.add(new int[] {HOUR, 1});
+                    break;
+                case 'I':
+                case 'l':
+                    fields.add(new int[] {HOUR12, 1});
+                    break;
+                case 'p':
+                case 'P':
+                    fields.add(new int[] {MERIDIAN, 0});
+                    break;
+                case 'M':
+                    fields.add(new int[] {MINUTE, 0});
+                    break;
+                case 'S':
+                    fields.add(new int[] {SECOND, 0});
+                    break;
+                case 's':
+                    fields.add(new int[] {EPOCH, 0});
+                    break;
+                case 'Q':
+                    fields.add(new int[] {EPOCH, 3});
+                    break;
+                case 'L':
+                    fields.add(new int[] {GREEDY_FRACTION, 9});
+                    break;
+                case 'N':
+                    if (width > 9) {
+                        return null;
+                    }
+                    fields.add(width == 0 ? new int[] {GREEDY_FRACTION, 9} : new int[] {FRACTION, width});
+                    break;
+                case 'z':
+                    if (colons > 3) {
+                        return null;
+                    }
+                    fields.add(new int[] {OFFSET, 1}); // %z, %:z, and %::z read the same offsets
+                    break;
+                case '%':
+                    fields.add(new int[] {LITERAL, '%'});
+                    break;
+                case 'n':
+                    fields.add(new int[] {LITERAL, '\n'});
+                    break;
+                case 't':
+                    fields.add(new int[] {LITERAL, '\t'});
+                    break;
+                case 'F':
+                    fields.addAll(compileRubyFields(YEAR, '-', MONTH, DAY));
+                    break;
+                case 'T':
+                    fields.addAll(compileRubyFields(HOUR, ':', MINUTE, SECOND));
+                    break;
+                default:
+                    return null;
+            }
+        }
+        if (!isCompilable(fields)) {
+            return null;
+        }
+        return new CompiledTimestampParser(fields, Resolution.JRUBY, defaultFromTimeZone);
+    }
+
+    // %F or %T
+    private static List<int[]> compileRubyFields(int first, char separator, int second, int third)
+    {
+        List<int[]> fields = new ArrayList<>();
+        fields.add(new int[] {first, 0});
+        fields.add(new int[] {LITERAL, separator});
+        fields.add(new int[] {second, 0});
+        fields.add(new int[] {LITERAL, separator});
+        fields.add(new int[] {third, 0});
+        return fields;
+    }
+
+    // @return returns null if the format is not a fixed layout
+    public static CompiledTimestampParser compileJavaFormat(String format, DateTimeZone defaultFromTimeZone)
+    {
+        boolean handleNanoResolution = format.contains("nnnnnnnnn");
+        List<int[]> fields = new ArrayList<>();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c == '\'') {
+                // quoted literal, '' is a single quote
+                int end = i + 1;
+                if (end < format.length() && format.charAt(end) == '\'') {
+                    fields.add(new int[] {LITERAL, '\''});
+                    i = end + 1;
+                    continue;
+                }
+                while (true) {
+                    if (end >= format.length()) {
+                        return null;
+                    }
+                    char q = format.charAt(end);
+                    if (q == '\'') {
+                        if (end + 1 < format.length() && format.charAt(end + 1) == '\'') {
+                            fields.add(new int[] {LITERAL, '\''});
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    fields.add(new int[] {LITERAL, q});
+                    end++;
+                }
+                i = end + 1;
+                continue;
+            }
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                fields.add(new int[] {LITERAL, c});
+                i++;
+                continue;
+            }
+            int count = 0;
+            while (i < format.length() && format.charAt(i) == c) {
+                count++;
+                i++;
+            }
+            switch (c) {
+                case 'y':
+                    if (count != 4) {
+                        return null;
+                    }
+                    fields.add(new int[] {YEAR, 0});
+                    break;
+                case 'M':
+                    if (count != 2) {
+                        return null;
+                    }
+                    fields.add(new int[] {MONTH, 0});
+                    break;
+                case 'd':
+                    if (count != 2) {
+                        return null;
+                    }
+                    fields.add(new int[] {DAY, 0});
+                    break;
+                case 'H':
+                    if (count != 2) {
+                        return null;
+                    }
+                    fields.add(new int[] {HOUR, 0});
+                    break;
+                case 'm':
+                    if (count != 2) {
+                        return null;
+                    }
+                    fields.add(new int[] {MINUTE, 0});
+                    break;
+                case 's':
+                    if (count != 2) {
+                        return null;
+                    }
+                    fields.add(new int[] {SECOND, 0});
+                    break;
+                case 'S':
+                    if (handleNanoResolution || count > 9) {
+                        return null;
+                    }
+                    fields.add(new int[] {FRACTION, count}); // Joda-Time reads at most count digits
+                    break;
+                case 'n':
+                    if (!handleNanoResolution || count > 9) {
+                        return null;
+                    }
+                    fields.add(new int[] {FRACTION, count});
+                    break;
+                case 'Z':
+                    if (count > 2) {
+                        return null;
+                    }
+                    fields.add(new int[] {OFFSET, 0});
+                    break;
+                default:
+                    return null;
+            }
+        }
+        if (!isCompilable(fields)) {
+            return null;
+        }
+        if (handleNanoResolution && !isNanoFractionFoundFirst(fields)) {
+            return null;
+        }
+        return new CompiledTimestampParser(fields, handleNanoResolution ? Resolution.JAVA_NANO : Resolution.JAVA, defaultFromTimeZone);
+    }
+
+    // year, month, and day are required because JRuby and Joda-Time have different default dates.
+    // Epoch seconds may be followed only by a fraction, because JRuby ignores the other fields then
+    private static boolean isCompilable(List<int[]> fields)
+    {
+        int[] counts = new int[EPOCH + 1];
+        for (int[] field : fields) {
+            counts[field[0]]++;
+        }
+        for (int kind = YEAR; kind <= EPOCH; kind++) {
+            if (counts[kind] > 1) {
+                return false;
+            }
+        }
+        if (counts[FRACTION] + counts[GREEDY_FRACTION] > 1 || counts[HOUR] + counts[HOUR12] > 1) {
+            return false;
+        }
+        if (counts[EPOCH] == 1) {
+            return fields.size() == counts[LITERAL] + counts[FRACTION] + counts[GREEDY_FRACTION] + 1;
+        }
+        return counts[YEAR] == 1 && counts[MONTH] == 1 && counts[DAY] == 1;
+    }
+
+    // TimestampParser finds nano seconds with regular expression \.(\d+), so the fraction must be
+    // the only field preceded by a '.'
+    private static boolean isNanoFractionFoundFirst(List<int[]> fields)
+    {
+        for (int i = 0; i < fields.size(); i++) {
+            int[] field = fields.get(i);
+            if (field[0] == LITERAL && field[1] == '.') {
+                return i + 1 < fields.size() && fields.get(i + 1)[0] == FRACTION;
+            }
+            if (field[0] == FRACTION) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public long getEpochSecond()
+    {
+        return epochSecond;
+    }
+
+    public int getNano()
+    {
+        return nano;
+    }
+
+    // @return returns false if text does not match with the canonical layout. Results are available
+    // through getEpochSecond() and getNano() if true
+    public boolean parse(String text)
+    {
+        int length = text.length();
+        int pos = 0;
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        long fraction = 0;
+        boolean hasOffset = false;
+        int offsetSeconds = 0;
+        int meridian = -1;
+        long epochUsec = -1;
+
+        int first = 0;
+        boolean datePrefixHit = false;
+        if (cachedDatePrefix != null && text.startsWith(cachedDatePrefix)) {
+            first = datePrefixFieldCount;
+            pos = datePrefixLength;
+            datePrefixHit = true;
+        }
+        for (int i = first; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    if (pos >= length || text.charAt(pos) != args[i]) {
+                        return false;
+                    }
+                    pos++;
+                    break;
+                case YEAR:
+                    year = parseDigits(text, pos, 4);
+                    if (year < 0) {
+                        return false;
+                    }
+                    pos += 4;
+                    break;
+                case MONTH:
+                    month = parseDigits(text, pos, 2);
+                    if (month < 1 || month > 12) {
+                        return false;
+                    }
+                    pos += 2;
+                    break;
+                case DAY:
+                    day = args[i] == 1 ? parseSpacePaddedDigits(text, pos) : parseDigits(text, pos, 2);
+                    if (day < 1) {
+                        return false;
+                    }
+                    pos += 2;
+                    break;
+                case HOUR:
+                    hour = args[i] == 1 ? parseSpacePaddedDigits(text, pos) : parseDigits(text, pos, 2);
+                    if (hour < 0 || hour > 23) {
+                        return false;
+                    }
+                    pos += 2;
+                    break;
+                case HOUR12:
+                    hour = parseSpacePaddedDigits(text, pos);
+                    if (hour < 1 || hour > 12) {
+                        return false;
+                    }
+                    pos += 2;
+                    break;
+                case MERIDIAN: {
+                    // JRuby matches /([ap])(?:m\b|\.m\.)/i, and a.m. is left to it
+                    if (pos + 2 > length || (text.charAt(pos + 1) != 'm' && text.charAt(pos + 1) != 'M')
+                            || (pos + 2 < length && isWordChar(text.charAt(pos + 2)))) {
+                        return false;
+                    }
+                    char c = text.charAt(pos);
+                    if (c == 'a' || c == 'A') {
+                        meridian = 0;
+                    }
+                    else if (c == 'p' || c == 'P') {
+                        meridian = 12;
+                    }
+                    else {
+                        return false;
+                    }
+                    pos += 2;
+                    break;
+                }
+                case EPOCH: {
+                    // all digits same with JRuby, and negative values are left to it
+                    int start = pos;
+                    long value = 0;
+                    while (pos < length && isDigit(text.charAt(pos))) {
+                        if (pos - start == MAX_EPOCH_SECOND_DIGITS + args[i]) {
+                            return false;
+                        }
+                        value = value * 10 + (text.charAt(pos) - '0');
+                        pos++;
+                    }
+                    if (pos == start) {
+                        return false;
+                    }
+                    epochUsec = value * POW10[6 - args[i]];
+                    break;
+                }
+                case MINUTE:
+                    minute = parseDigits(text, pos, 2);
+                    if (minute < 0 || minute > 59) {
+                        return false;
+                    }
+                    pos += 2;
+                    break;
+                case SECOND:
+                    second = parseDigits(text, pos, 2);
+                    if (second < 0 || second > 59) {
+                        return false;
+                    }
+                    pos += 2;
+                    break;
+                case FRACTION:
+                case GREEDY_FRACTION: {
+                    int start = pos;
+                    long value = 0;
+                    while (pos < length && pos - start < args[i] && isDigit(text.charAt(pos))) {
+                        value = value * 10 + (text.charAt(pos) - '0');
+                        pos++;
+                    }
+                    int digits = pos - start;
+                    if (digits == 0) {
+                        return false;
+                    }
+                    if (kinds[i] == GREEDY_FRACTION && pos < length && isDigit(text.charAt(pos))) {
+                        return false;
+                    }
+                    fraction = value * POW10[9 - digits];
+                    break;
+                }
+                case OFFSET: {
+                    if (args[i] == 1 && text.startsWith("UTC", pos)) {
+                        pos += 3;
+                        hasOffset = true;
+                        offsetSeconds = 0;
+                        break;
+                    }
+                    // JRuby reads Z as a zone name of zero offset if it is not followed by a word character
+                    if (args[i] == 1 && pos < length && text.charAt(pos) == 'Z'
+                            && (pos + 1 == length || !isWordChar(text.charAt(pos + 1)))) {
+                        pos += 1;
+                        hasOffset = true;
+                        offsetSeconds = 0;
+                        break;
+                    }
+                    if (pos >= length) {
+                        return false;
+                    }
+                    char sign = text.charAt(pos);
+                    if (sign != '+' && sign != '-') {
+                        return false;
+                    }
+                    int offsetHour = parseDigits(text, pos + 1, 2);
+                    if (offsetHour < 0 || offsetHour > 23) {
+                        return false;
+                    }
+                    pos += 3;
+                    if (pos < length && text.charAt(pos) == ':') {
+                        pos++;
+                    }
+                    int offsetMinute = parseDigits(text, pos, 2);
+                    if (offsetMinute < 0 || offsetMinute > 59) {
+                        return false;
+                    }
+                    pos += 2;
+                    int offsetSecond = 0;
+                    if (args[i] == 1 && pos + 3 <= length && text.charAt(pos) == ':' && text.charAt(pos - 3) == ':') {
+                        offsetSecond = parseDigits(text, pos + 1, 2);
+                        if (offsetSecond < 0 || offsetSecond > 59) {
+                            return false;
+                        }
+                        pos += 3;
+                    }
+                    hasOffset = true;
+                    offsetSeconds = (offsetHour * 3600 + offsetMinute * 60 + offsetSecond) * (sign == '-' ? -1 : 1);
+                    break;
+                }
+                default:
+                    return false;
+            }
+        }
+        if (pos != length) {
+            return false;
+        }
+        if (epochUsec >= 0) {
+            // the JRuby helper returns epoch seconds as a local time, which is converted with default_from_timezone
+            long usec = epochUsec + fraction / 1000;
+            return setJRubyResult(usec / 1000000, usec % 1000000, false, 0);
+        }
+        if (meridian >= 0) {
+            hour = hour % 12 + meridian;
+        }
+        long epochDay;
+        if (datePrefixHit) {
+            epochDay = cachedEpochDay;
+        }
+        else {
+            if (day > daysInMonth(year, month)) {
+                return false;
+            }
+            epochDay = daysFromCivil(year, month, day);
+            if (datePrefixLength > 0) {
+                cachedDatePrefix = text.substring(0, datePrefixLength);
+                cachedEpochDay = epochDay;
+            }
+        }
+
+        long localSecond = epochDay * 86400L + hour * 3600 + minute * 60 + second;
+        switch (resolution) {
+            case JRUBY:
+                return setJRubyResult(localSecond, fraction / 1000, hasOffset, offsetSeconds);
+            case JAVA:
+                return setJavaResult(localSecond, fraction / 1000000, hasOffset, offsetSeconds, -1);
+            default:
+                return setJavaResult(localSecond, fraction / 1000000, hasOffset, offsetSeconds, fraction);
+        }
+    }
+
+    // same with TimestampParser.jrubyParse
+    private boolean setJRubyResult(long localSecond, long usec, boolean hasOffset, int offsetSeconds)
+    {
+        if (hasOffset) {
+            epochSecond = localSecond - offsetSeconds;
+        }
+        else if (isInOffsetWindow(localSecond * 1000)) {
+            epochSecond = (localSecond * 1000 - cachedOffsetMillis) / 1000;
+        }
+        else {
+            epochSecond = defaultFromTimeZone.convertLocalToUTC(localSecond * 1000, false) / 1000;
+            updateOffsetWindow(localSecond * 1000);
+        }
+        nano = (int) (usec * 1000);
+        return true;
+    }
+
+    // same with DateTimeFormatter.parseDateTime and TimestampParser.javaParse
+    private boolean setJavaResult(long localSecond, long milliOfSecond, boolean hasOffset, int offsetSeconds, long nanoOfSecond)
+    {
+        long localMillis = localSecond * 1000 + milliOfSecond;
+        long millis;
+        if (hasOffset) {
+            millis = localMillis - offsetSeconds * 1000L;
+        }
+        else if (isInOffsetWindow(localMillis)) {
+            millis = localMillis - cachedOffsetMillis;
+        }
+        else {
+            int offset = defaultFromTimeZone.getOffsetFromLocal(localMillis);
+            millis = localMillis - offset;
+            if (offset != defaultFromTimeZone.getOffset(millis)) {
+                return false; // illegal instant due to time zone offset transition
+            }
+            updateOffsetWindow(localMillis);
+        }
+        if (nanoOfSecond >= 0) {
+            epochSecond = millis / 1000;
+            nano = (int) nanoOfSecond;
+        }
+        else {
+            epochSecond = floorDiv(millis, 1000);
+            nano = (int) (millis - epochSecond * 1000) * 1000000;
+        }
+        return true;
+    }
+
+    private boolean isInOffsetWindow(long localMillis)
+    {
+        return localMillis >= offsetWindowFrom && localMillis < offsetWindowUntil;
+    }
+
+    // local time near localMillis is converted with a constant offset if it is more than a day away from
+    // transitions, because offset changes are shorter than a day
+    private void updateOffsetWindow(long localMillis)
+    {
+        if (defaultFromTimeZone.isFixed()) {
+            cachedOffsetMillis = defaultFromTimeZone.getOffset(0L);
+            offsetWindowFrom = Long.MIN_VALUE;
+            offsetWindowUntil = Long.MAX_VALUE;
+            return;
+        }
+        long millis = localMillis - defaultFromTimeZone.getOffset(localMillis);
+        int offset = defaultFromTimeZone.getOffset(millis);
+        long previous = defaultFromTimeZone.previousTransition(millis);
+        long next = defaultFromTimeZone.nextTransition(millis);
+        long from = previous == millis ? Long.MIN_VALUE : previous + offset + DAY_MILLIS;
+        long until = next == millis ? Long.MAX_VALUE : next + offset - DAY_MILLIS;
+        if (from < until) {
+            cachedOffsetMillis = offset;
+            offsetWindowFrom = from;
+            offsetWindowUntil = until;
+        }
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c)
+    {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    // @return returns -1 if text does not have width digits at pos
+    private static int parseDigits(String text, int pos, int width)
+    {
+        if (pos + width > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = pos; i < pos + width; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // @return returns -1 if text does not have 2 digits or a space and a digit at pos
+    private static int parseSpacePaddedDigits(String text, int pos)
+    {
+        if (pos + 2 <= text.length() && text.charAt(pos) == ' ') {
+            return isDigit(text.charAt(pos + 1)) ? text.charAt(pos + 1) - '0' : -1;
+        }
+        return parseDigits(text, pos, 2);
+    }
+
+    private static long floorDiv(long x, long y)
+    {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    static boolean isLeapYear(int year)
+    {
+        return (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    static int daysInMonth(int year, int month)
+    {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // days since 1970-01-01 in the proleptic Gregorian calendar
+    static long daysFromCivil(int year, int month, int day)
+    {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,114 @@
+package org.embulk.filter.timestamp_format;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.embulk.spi.Exec;
+import org.slf4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Summary of conversions of a task, which is merged over workers of parallelism
+public class ConversionMetrics
+{
+    private static final Logger logger = Exec.getLogger(TimestampFormatFilterPlugin.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // tasks in a JVM append to the same metrics_file
+    private static final Object fileLock = new Object();
+
+    // column name => "values", "nulls", "invalids", "nanos" => count
+    private final Map<String, Map<String, Long>> columns = new LinkedHashMap<>();
+    // column name or json path => format => hit count
+    private final Map<String, Map<String, Long>> formats = new LinkedHashMap<>();
+
+    void addColumn(ColumnMetrics metrics)
+    {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("values", metrics.getValueCount());
+        counts.put("nulls", metrics.getNullCount());
+        counts.put("invalids", 0L); // added by addInvalidCount once, because handlers are shared by workers
+        counts.put("nanos", metrics.getEstimatedNanos());
+        addCounts(columns, metrics.getName(), counts);
+    }
+
+    void addInvalidCount(String name, long invalidCount)
+    {
+        Map<String, Long> counts = columns.get(name);
+        if (counts != null) {
+            counts.put("invalids", counts.get("invalids") + invalidCount);
+        }
+    }
+
+    void addFormatHits(String name, TimestampParser parser)
+    {
+        List<String> formatList = parser.getFormatList();
+        long[] hitCounts = parser.getFormatHitCounts();
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < formatList.size(); i++) {
+            counts.put(formatList.get(i), hitCounts[i]);
+        }
+        addCounts(formats, name, counts);
+    }
+
+    public ConversionMetrics merge(ConversionMetrics other)
+    {
+        for (Map.Entry<String, Map<String, Long>> entry : other.columns.entrySet()) {
+            addCounts(columns, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Map<String, Long>> entry : other.formats.entrySet()) {
+            addCounts(formats, entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    private static void addCounts(Map<String, Map<String, Long>> map, String name, Map<String, Long> counts)
+    {
+        Map<String, Long> current = map.get(name);
+        if (current == null) {
+            map.put(name, new LinkedHashMap<>(counts));
+            return;
+        }
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            Long count = current.get(entry.getKey());
+            current.put(entry.getKey(), (count == null ? 0L : count) + entry.getValue());
+        }
+    }
+
+    public String toJson()
+    {
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("columns", columns);
+        root.put("formats", formats);
+        try {
+            return mapper.writeValueAsString(root);
+        }
+        catch (JsonProcessingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // logs a summary, and appends it to the file as a json line if specified
+    public void report(String metricsFile)
+    {
+        String json = toJson();
+        logger.info(String.format("metrics: %s", json));
+        if (metricsFile == null) {
+            return;
+        }
+        synchronized (fileLock) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(metricsFile, true), StandardCharsets.UTF_8)) {
+                writer.write(json);
+                writer.write("\n");
+            }
+            catch (IOException ex) {
+                logger.warn(String.format("Failed to write metrics to \"%s\": %s", metricsFile, ex.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+
+public class ConverterRecordProcessor
+        implements RecordProcessor
+{
+    private final ColumnConverter[] converters;
+
+    public ConverterRecordProcessor(ColumnConverter[] converters)
+    {
+        this.converters = converters;
+    }
+
+    @Override
+    public void processRecord(PageReader pageReader, PageBuilder pageBuilder)
+    {
+        for (ColumnConverter converter : converters) {
+            converter.convert(pageReader, pageBuilder);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.PluginTask;
+import org.embulk.spi.DataException;
+import org.embulk.spi.Exec;
+import org.slf4j.Logger;
+
+// Handles invalid values of a column with stop_on_invalid_record: false.
+// Invalid values are counted, and only first samples and periodic summaries are logged.
+// Shared by workers of parallelism, so that the log limit and counts are of the column in a task
+public class InvalidValueHandler
+{
+    private static final Logger logger = Exec.getLogger(TimestampFormatFilterPlugin.class);
+    private final String name;
+    private final boolean stopOnInvalidRecord;
+    private final long logLimit; // negative for unlimited
+    private final long summaryIntervalMillis; // 0 to disable
+    private long invalidCount = 0;
+    private long nextSummaryMillis = 0;
+
+    public InvalidValueHandler(String name, boolean stopOnInvalidRecord, long logLimit, long summaryIntervalMillis)
+    {
+        this.name = name;
+        this.stopOnInvalidRecord = stopOnInvalidRecord;
+        this.logLimit = logLimit;
+        this.summaryIntervalMillis = summaryIntervalMillis;
+    }
+
+    InvalidValueHandler(String name, PluginTask task)
+    {
+        this(name, task.getStopOnInvalidRecord(), task.getInvalidValueLogLimit(),
+                task.getInvalidValueSummaryInterval() * 1000L);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isStopOnInvalidRecord()
+    {
+        return stopOnInvalidRecord;
+    }
+
+    public synchronized long getInvalidCount()
+    {
+        return invalidCount;
+    }
+
+    public synchronized void handle(DataException ex)
+    {
+        invalidCount++;
+        if (logLimit < 0 || invalidCount <= logLimit) {
+            logger.warn(ex.getMessage());
+            if (invalidCount == logLimit) {
+                reachLogLimit();
+            }
+        }
+        else if (logLimit == 0 && invalidCount == 1) {
+            reachLogLimit(); // no samples are logged
+        }
+        else if (summaryIntervalMillis > 0) {
+            long now = System.currentTimeMillis();
+            if (now >= nextSummaryMillis) {
+                nextSummaryMillis = now + summaryIntervalMillis;
+                logger.warn(String.format("%s: %d invalid values so far", name, invalidCount));
+            }
+        }
+    }
+
+    private void reachLogLimit()
+    {
+        logger.warn(String.format("%s: invalid values reached invalid_value_log_limit %d, further ones are only counted", name, logLimit));
+        nextSummaryMillis = System.currentTimeMillis() + summaryIntervalMillis;
+    }
+
+    // 0 until invalid values reach the log limit
+    synchronized long getNextSummaryMillis()
+    {
+        return nextSummaryMillis;
+    }
+
+    public synchronized void finish()
+    {
+        if (invalidCount > 0) {
+            logger.warn(String.format("%s: %d invalid values in total", name, invalidCount));
+        }
+    }
+}
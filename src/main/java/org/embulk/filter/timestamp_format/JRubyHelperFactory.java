@@ -0,0 +1,29 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.JRubyTimeParserHelper;
+import org.embulk.spi.time.JRubyTimeParserHelperFactory;
+import org.jruby.embed.ScriptingContainer;
+
+// Creates JRuby helpers of ruby formats for TimestampParser. The factory scriptlet is evaluated on the first
+// helper only, and shared among parsers of a task, so that java formats and compilable ruby formats whose
+// values the compiled parser accepts never run ruby.
+// Not thread-safe, same with TimestampParser
+public class JRubyHelperFactory
+{
+    private final ScriptingContainer jruby;
+    private JRubyTimeParserHelperFactory factory = null;
+
+    public JRubyHelperFactory(ScriptingContainer jruby)
+    {
+        this.jruby = jruby;
+    }
+
+    public JRubyTimeParserHelper newHelper(String format)
+    {
+        if (factory == null) {
+            factory = (JRubyTimeParserHelperFactory) jruby.runScriptlet("Embulk::Java::TimeParserHelper::Factory.new");
+        }
+        // TODO get default current time from ExecTask.getExecTimestamp
+        return (JRubyTimeParserHelper) factory.newInstance(format, 1970, 1, 1, 0, 0, 0, 0);  // TODO default time zone
+    }
+}
@@ -0,0 +1,37 @@
+package org.embulk.filter.timestamp_format;
+
+import org.joda.time.DateTimeZone;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Formats with a java.time pattern in nano second resolution, used by timestamp_formatter: java_time.
+// This class is loaded only if java_time is configured, to keep running on Java 7 otherwise
+public class JavaTimeTimestampFormatter
+{
+    // pattern and zone id => formatter, shared among threads because formatters are immutable
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTER_CACHE = new ConcurrentHashMap<>();
+
+    private final DateTimeFormatter formatter;
+
+    public JavaTimeTimestampFormatter(String pattern, DateTimeZone toTimeZone)
+    {
+        ZoneId zone = ZoneId.of(toTimeZone.getID());
+        String key = pattern + '\u0000' + zone.getId();
+        DateTimeFormatter formatter = FORMATTER_CACHE.get(key);
+        if (formatter == null) {
+            formatter = DateTimeFormatter.ofPattern(pattern, Locale.ENGLISH).withZone(zone);
+            FORMATTER_CACHE.putIfAbsent(key, formatter);
+        }
+        this.formatter = formatter;
+    }
+
+    public void format(long epochSecond, int nano, StringBuilder buffer)
+    {
+        formatter.formatTo(Instant.ofEpochSecond(epochSecond, nano), buffer);
+    }
+}
@@ -0,0 +1,107 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Parses java.time patterns with java.time.format.DateTimeFormatter in nano second resolution, used by
+// timestamp_parser: java_time. Formatters are immutable, so they are cached and shared among threads.
+// This class is loaded only if java_time is configured, to keep running on Java 7 otherwise
+public class JavaTimeTimestampParser
+{
+    // pattern and zone id => formatter
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTER_CACHE = new ConcurrentHashMap<>();
+
+    private final DateTimeFormatter[] formatters;
+    private int errorIndex = 0;
+
+    public JavaTimeTimestampParser(List<String> patternList, DateTimeZone defaultFromTimeZone)
+    {
+        ZoneId zone = ZoneId.of(defaultFromTimeZone.getID());
+        this.formatters = new DateTimeFormatter[patternList.size()];
+        for (int i = 0; i < formatters.length; i++) {
+            formatters[i] = getFormatter(patternList.get(i), zone);
+        }
+    }
+
+    private static DateTimeFormatter getFormatter(String pattern, ZoneId zone)
+    {
+        String key = pattern + '\u0000' + zone.getId();
+        DateTimeFormatter formatter = FORMATTER_CACHE.get(key);
+        if (formatter == null) {
+            // case insensitive for %P (am/pm), and the zone is used if the text has no offset
+            formatter = new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern(pattern)
+                    .toFormatter(Locale.ENGLISH).withZone(zone);
+            FORMATTER_CACHE.putIfAbsent(key, formatter);
+        }
+        return formatter;
+    }
+
+    // position where the last failed parse stopped
+    public int getErrorIndex()
+    {
+        return errorIndex;
+    }
+
+    // @return null if the text does not match the format at formatIndex
+    public Timestamp parse(int formatIndex, String text)
+    {
+        DateTimeFormatter formatter = formatters[formatIndex];
+        if (formatters.length > 1) {
+            // a mismatch is usual with multiple formats, so checks the syntax first without exceptions
+            ParsePosition position = new ParsePosition(0);
+            if (formatter.parseUnresolved(text, position) == null || position.getIndex() < text.length()) {
+                errorIndex = position.getErrorIndex() >= 0 ? position.getErrorIndex() : position.getIndex();
+                return null;
+            }
+        }
+        try {
+            return toTimestamp(formatter.parse(text));
+        }
+        catch (DateTimeParseException ex) {
+            errorIndex = ex.getErrorIndex();
+            return null;
+        }
+        catch (DateTimeException ex) {
+            // invalid field values such as February 30
+            errorIndex = 0;
+            return null;
+        }
+    }
+
+    private static Timestamp toTimestamp(TemporalAccessor parsed)
+    {
+        if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+            long epochSecond = parsed.getLong(ChronoField.INSTANT_SECONDS);
+            int nano = parsed.isSupported(ChronoField.NANO_OF_SECOND) ? parsed.get(ChronoField.NANO_OF_SECOND) : 0;
+            return Timestamp.ofEpochSecond(epochSecond, nano);
+        }
+        // missing fields default to 1970-01-01 00:00:00 same with Joda-Time
+        LocalDate date = parsed.query(TemporalQueries.localDate());
+        if (date == null) {
+            date = LocalDate.of(
+                    parsed.isSupported(ChronoField.YEAR) ? parsed.get(ChronoField.YEAR) : 1970,
+                    parsed.isSupported(ChronoField.MONTH_OF_YEAR) ? parsed.get(ChronoField.MONTH_OF_YEAR) : 1,
+                    parsed.isSupported(ChronoField.DAY_OF_MONTH) ? parsed.get(ChronoField.DAY_OF_MONTH) : 1);
+        }
+        LocalTime time = parsed.query(TemporalQueries.localTime());
+        ZonedDateTime dateTime = ZonedDateTime.of(date, time == null ? LocalTime.MIDNIGHT : time, parsed.query(TemporalQueries.zone()));
+        return Timestamp.ofEpochSecond(dateTime.toEpochSecond(), dateTime.getNano());
+    }
+}
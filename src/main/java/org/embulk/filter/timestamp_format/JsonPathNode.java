@@ -0,0 +1,120 @@
+package org.embulk.filter.timestamp_format;
+
+import io.github.medjed.jsonpathcompiler.expressions.path.ArrayPathToken;
+import io.github.medjed.jsonpathcompiler.expressions.path.PathToken;
+import io.github.medjed.jsonpathcompiler.expressions.path.PropertyPathToken;
+import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.ColumnConfig;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+// A node of the trie of configured json paths, which JsonVisitor walks along with a json value.
+// Children are few in practice, so they are looked up by linear scans without building path strings or hashing.
+public class JsonPathNode
+{
+    private static final String WILDCARD_FRAGMENT = "[*]";
+
+    // keys are compared as msgpack string values, which compares raw bytes without decoding keys of a record
+    private Value[] propertyKeys = new Value[0];
+    private JsonPathNode[] propertyChildren = new JsonPathNode[0];
+    private int[] indexes = new int[0];
+    private JsonPathNode[] indexChildren = new JsonPathNode[0];
+    private JsonPathNode wildcardChild = null;
+    private ColumnConfig columnConfig = null;
+
+    public boolean hasPropertyChildren()
+    {
+        return propertyKeys.length > 0;
+    }
+
+    public boolean hasIndexChildren()
+    {
+        return indexes.length > 0 || wildcardChild != null;
+    }
+
+    // @return null if no path goes through the property
+    public JsonPathNode getPropertyChild(Value key)
+    {
+        for (int i = 0; i < propertyKeys.length; i++) {
+            if (propertyKeys[i].equals(key)) {
+                return propertyChildren[i];
+            }
+        }
+        return null;
+    }
+
+    // @return null if no path goes through the index. An exact index is preferred to [*]
+    public JsonPathNode getIndexChild(int index)
+    {
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] == index) {
+                return indexChildren[i];
+            }
+        }
+        return wildcardChild;
+    }
+
+    // @return null if no path ends at this node
+    public ColumnConfig getColumnConfig()
+    {
+        return columnConfig;
+    }
+
+    // adds a path whose tokens start from next of the column name token, e.g., ['bar'][0] of $['foo']['bar'][0]
+    void add(PathToken pathToken, ColumnConfig columnConfig)
+    {
+        if (pathToken == null) {
+            this.columnConfig = columnConfig;
+            return;
+        }
+        PathToken next = pathToken.isLeaf() ? null : pathToken.next();
+        if (pathToken instanceof PropertyPathToken) {
+            List<String> properties = ((PropertyPathToken) pathToken).getProperties();
+            if (properties.size() != 1) {
+                return; // multiple properties never match as before
+            }
+            addPropertyChild(properties.get(0)).add(next, columnConfig);
+        }
+        else if (pathToken instanceof ArrayPathToken) {
+            int index = ((ArrayPathToken) pathToken).getArrayIndexOperation().indexes().get(0);
+            addIndexChild(index).add(next, columnConfig);
+        }
+        else if (pathToken.getPathFragment().equals(WILDCARD_FRAGMENT)) {
+            if (wildcardChild == null) {
+                wildcardChild = new JsonPathNode();
+            }
+            wildcardChild.add(next, columnConfig);
+        }
+    }
+
+    private JsonPathNode addPropertyChild(String name)
+    {
+        Value key = ValueFactory.newString(name);
+        JsonPathNode child = getPropertyChild(key);
+        if (child == null) {
+            child = new JsonPathNode();
+            propertyKeys = Arrays.copyOf(propertyKeys, propertyKeys.length + 1);
+            propertyChildren = Arrays.copyOf(propertyChildren, propertyChildren.length + 1);
+            propertyKeys[propertyKeys.length - 1] = key;
+            propertyChildren[propertyChildren.length - 1] = child;
+        }
+        return child;
+    }
+
+    private JsonPathNode addIndexChild(int index)
+    {
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] == index) {
+                return indexChildren[i];
+            }
+        }
+        JsonPathNode child = new JsonPathNode();
+        indexes = Arrays.copyOf(indexes, indexes.length + 1);
+        indexChildren = Arrays.copyOf(indexChildren, indexChildren.length + 1);
+        indexes[indexes.length - 1] = index;
+        indexChildren[indexChildren.length - 1] = child;
+        return child;
+    }
+}
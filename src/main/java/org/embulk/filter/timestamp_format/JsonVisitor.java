@@ -1,32 +1,26 @@
 package org.embulk.filter.timestamp_format;
 
-import io.github.medjed.jsonpathcompiler.expressions.Path;
-import io.github.medjed.jsonpathcompiler.expressions.path.ArrayPathToken;
 import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
 import io.github.medjed.jsonpathcompiler.expressions.path.PathToken;
-import io.github.medjed.jsonpathcompiler.expressions.path.PropertyPathToken;
 import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.ColumnConfig;
 import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.PluginTask;
 
 import org.embulk.spi.Exec;
 import org.msgpack.value.ArrayValue;
-import org.msgpack.value.MapValue;
 import org.msgpack.value.Value;
 import org.msgpack.value.ValueFactory;
 
 import org.slf4j.Logger;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
 
 public class JsonVisitor
 {
     private static final Logger logger = Exec.getLogger(TimestampFormatFilterPlugin.class);
     private final PluginTask task;
     private final JsonCaster jsonCaster;
-    private final HashMap<String, ColumnConfig> jsonPathColumnConfigMap = new HashMap<>();
-    private final HashSet<String> shouldVisitSet = new HashSet<>();
+    // column name => root node of json paths in the column
+    private final HashMap<String, JsonPathNode> rootNodeMap = new HashMap<>();
 
     JsonVisitor(PluginTask task, JsonCaster jsonCaster)
     {
@@ -34,8 +28,7 @@ public class JsonVisitor
         this.jsonCaster = jsonCaster;
 
         assertJsonPathFormat();
-        buildJsonPathColumnConfigMap();
-        buildShouldVisitSet();
+        buildRootNodeMap();
     }
 
     private void assertJsonPathFormat()
@@ -49,89 +42,96 @@ public class JsonVisitor
         }
     }
 
-    private void buildJsonPathColumnConfigMap()
+    private void buildRootNodeMap()
     {
-        // json path => Type
+        // compiles json paths into tries to avoid building path strings in visit
         for (ColumnConfig columnConfig : task.getColumns()) {
             String name = columnConfig.getName();
             if (!PathCompiler.isProbablyJsonPath(name)) {
                 continue;
             }
-            Path compiledPath = PathCompiler.compile(name);
-            this.jsonPathColumnConfigMap.put(compiledPath.toString(), columnConfig);
-        }
-    }
-
-    private void buildShouldVisitSet()
-    {
-        // json partial path => Boolean to avoid unnecessary type: json visit
-        for (ColumnConfig columnConfig : task.getColumns()) {
-            String name = columnConfig.getName();
-            if (! PathCompiler.isProbablyJsonPath(name)) {
-                continue;
-            }
-            Path compiledPath = PathCompiler.compile(name);
-            PathToken parts = compiledPath.getRoot();
-            StringBuilder partialPath = new StringBuilder("$");
-            while (! parts.isLeaf()) {
-                parts = parts.next(); // first next() skips "$"
-                partialPath.append(parts.getPathFragment());
-                this.shouldVisitSet.add(partialPath.toString());
+            String columnName = JsonPathUtil.getColumnName(name);
+            JsonPathNode rootNode = rootNodeMap.get(columnName);
+            if (rootNode == null) {
+                rootNode = new JsonPathNode();
+                rootNodeMap.put(columnName, rootNode);
             }
+            PathToken columnToken = PathCompiler.compile(name).getRoot().next(); // skip "$"
+            rootNode.add(columnToken.isLeaf() ? null : columnToken.next(), columnConfig);
         }
     }
 
-    private boolean shouldVisit(String jsonPath)
+    // @return null if no json path is configured in the column
+    public JsonPathNode getRootNode(String columnName)
     {
-        return shouldVisitSet.contains(jsonPath);
+        return rootNodeMap.get(columnName);
     }
 
-    public Value visit(String rootPath, Value value)
+    // containers are copied only if any descendant is converted, otherwise the given value is returned as is
+    public Value visit(JsonPathNode node, Value value)
     {
-        if (!shouldVisit(rootPath)) {
-            return value;
-        }
         if (value.isArrayValue()) {
+            if (!node.hasIndexChildren()) {
+                return value;
+            }
             ArrayValue arrayValue = value.asArrayValue();
             int size = arrayValue.size();
-            Value[] newValue = new Value[size];
+            Value[] newValue = null;
             for (int i = 0; i < size; i++) {
-                String pathFragment = ArrayPathToken.getPathFragment(i);
-                String k = new StringBuilder(rootPath).append(pathFragment).toString();
-                if (!shouldVisit(k)) {
-                    k = new StringBuilder(rootPath).append("[*]").toString(); // try [*] too
+                JsonPathNode child = node.getIndexChild(i);
+                if (child == null) {
+                    continue;
                 }
                 Value v = arrayValue.get(i);
-                newValue[i] = visit(k, v);
+                Value r = visit(child, v);
+                if (r == v) {
+                    continue;
+                }
+                if (newValue == null) {
+                    newValue = new Value[size];
+                    for (int j = 0; j < size; j++) {
+                        newValue[j] = arrayValue.get(j);
+                    }
+                }
+                newValue[i] = r;
             }
-            return ValueFactory.newArray(newValue, true);
+            return newValue == null ? value : ValueFactory.newArray(newValue, true);
         }
         else if (value.isMapValue()) {
-            MapValue mapValue = value.asMapValue();
-            int size = mapValue.size() * 2;
-            Value[] newValue = new Value[size];
-            int i = 0;
-            for (Map.Entry<Value, Value> entry : mapValue.entrySet()) {
-                Value k = entry.getKey();
-                Value v = entry.getValue();
-                String pathFragment = PropertyPathToken.getPathFragment(k.asStringValue().asString());
-                String newPath = new StringBuilder(rootPath).append(pathFragment).toString();
-                Value r = visit(newPath, v);
-                newValue[i++] = k;
-                newValue[i++] = r;
+            if (!node.hasPropertyChildren()) {
+                return value;
+            }
+            Value[] keyValues = value.asMapValue().getKeyValueArray();
+            Value[] newKeyValues = null;
+            for (int i = 0; i < keyValues.length; i += 2) {
+                JsonPathNode child = node.getPropertyChild(keyValues[i]);
+                if (child == null) {
+                    continue;
+                }
+                Value v = keyValues[i + 1];
+                Value r = visit(child, v);
+                if (r == v) {
+                    continue;
+                }
+                if (newKeyValues == null) {
+                    newKeyValues = keyValues.clone();
+                }
+                newKeyValues[i + 1] = r;
             }
-            return ValueFactory.newMap(newValue, true);
+            return newKeyValues == null ? value : ValueFactory.newMap(newKeyValues, true);
+        }
+
+        ColumnConfig columnConfig = node.getColumnConfig();
+        if (columnConfig == null) {
+            return value;
         }
         else if (value.isIntegerValue()) {
-            ColumnConfig columnConfig = jsonPathColumnConfigMap.get(rootPath);
             return jsonCaster.fromLong(columnConfig, value.asIntegerValue());
         }
         else if (value.isFloatValue()) {
-            ColumnConfig columnConfig = jsonPathColumnConfigMap.get(rootPath);
             return jsonCaster.fromDouble(columnConfig, value.asFloatValue());
         }
         else if (value.isStringValue()) {
-            ColumnConfig columnConfig = jsonPathColumnConfigMap.get(rootPath);
             return jsonCaster.fromString(columnConfig, value.asStringValue());
         }
         else {
@@ -0,0 +1,241 @@
+package org.embulk.filter.timestamp_format;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.PluginTask;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecAction;
+import org.embulk.spi.ExecSession;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Converts records of each page with a pool of workers.
+// An input page is split into chunk pages on the calling thread, and each chunk page is converted by a worker
+// which owns its ColumnCaster because JRuby parser helpers and RubyDateFormat are not thread-safe.
+// Converted pages are passed to the next output in the input order on the calling thread.
+// Chunks are copied rather than read in place because PageReader releases the page it is set to, so a page
+// can not be shared among workers. The copy is serial, which bounds the speedup if conversion is cheap.
+public class ParallelPageOutput
+        implements PageOutput
+{
+    private final PluginTask task;
+    private final PageOutput output;
+    private final int parallelism;
+    private final ExecSession session;
+    private final ExecutorService executor;
+    private final List<Worker> workers = new ArrayList<>();
+    private final BlockingQueue<Worker> idleWorkers;
+    private final Deque<Future<List<Page>>> pendingChunks = new ArrayDeque<>();
+
+    // copies records of an input page into chunk pages
+    private final PageReader pageReader;
+    private final PageBuilder chunkBuilder;
+    private final PageCollector chunkCollector = new PageCollector();
+    private final RecordProcessor chunkCopier;
+
+    ParallelPageOutput(PluginTask task, Schema inputSchema, Schema outputSchema, PageOutput output, int parallelism)
+    {
+        this.task = task;
+        this.output = output;
+        this.parallelism = parallelism;
+        this.session = Exec.session();
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("timestamp_format-%d").setDaemon(true).build());
+        this.idleWorkers = new ArrayBlockingQueue<>(parallelism);
+        // shared so that invalid values are counted and logged up to invalid_value_log_limit per column of a task
+        Map<String, InvalidValueHandler> invalidValueHandlerMap = new LinkedHashMap<>();
+        for (int i = 0; i < parallelism; i++) {
+            Worker worker = new Worker(task, inputSchema, outputSchema, invalidValueHandlerMap);
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+
+        this.pageReader = new PageReader(inputSchema);
+        this.chunkBuilder = new PageBuilder(Exec.getBufferAllocator(), inputSchema, chunkCollector);
+        this.chunkCopier = new ConverterRecordProcessor(ColumnCaster.newPassThroughConverters(inputSchema));
+    }
+
+    @Override
+    public void add(Page page)
+    {
+        int chunkSize = Math.max(1, (PageReader.getRecordCount(page) + parallelism - 1) / parallelism);
+        int recordCount = 0;
+        pageReader.setPage(page);
+        while (pageReader.nextRecord()) {
+            chunkCopier.processRecord(pageReader, chunkBuilder);
+            chunkBuilder.addRecord();
+            if (++recordCount % chunkSize == 0) {
+                submitChunks();
+            }
+        }
+        submitChunks();
+    }
+
+    private void submitChunks()
+    {
+        chunkBuilder.flush();
+        for (final Page chunk : chunkCollector.take()) {
+            pendingChunks.addLast(executor.submit(new Callable<List<Page>>() {
+                @Override
+                public List<Page> call() throws Exception
+                {
+                    final Worker worker = idleWorkers.take();
+                    try {
+                        return Exec.doWith(session, new ExecAction<List<Page>>() {
+                            @Override
+                            public List<Page> run()
+                            {
+                                return worker.process(chunk);
+                            }
+                        });
+                    }
+                    finally {
+                        idleWorkers.put(worker);
+                    }
+                }
+            }));
+        }
+        while (pendingChunks.size() > parallelism * 2) {
+            outputChunk(pendingChunks.removeFirst());
+        }
+    }
+
+    private void outputChunk(Future<List<Page>> pendingChunk)
+    {
+        List<Page> pages;
+        try {
+            pages = pendingChunk.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+        catch (ExecutionException ex) {
+            // unwrap ExecutionException of both Future and Exec.doWith to rethrow DataException as is
+            Throwable cause = ex;
+            while (cause instanceof ExecutionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        for (Page page : pages) {
+            output.add(page);
+        }
+    }
+
+    @Override
+    public void finish()
+    {
+        submitChunks();
+        while (!pendingChunks.isEmpty()) {
+            outputChunk(pendingChunks.removeFirst());
+        }
+        List<ColumnCaster> columnCasters = new ArrayList<>();
+        for (Worker worker : workers) {
+            columnCasters.add(worker.columnCaster);
+        }
+        ColumnCaster.finish(columnCasters);
+        if (task.getMetrics()) {
+            ColumnCaster.getMetrics(columnCasters).report(task.getMetricsFile().orNull());
+        }
+        output.finish();
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+        pageReader.close();
+        chunkBuilder.close();
+        for (Worker worker : workers) {
+            worker.close();
+        }
+        output.close();
+    }
+
+    private static class Worker
+    {
+        private final ColumnCaster columnCaster;
+        private final RecordProcessor recordProcessor;
+        private final PageReader pageReader;
+        private final PageBuilder pageBuilder;
+        private final PageCollector pageCollector = new PageCollector();
+
+        Worker(PluginTask task, Schema inputSchema, Schema outputSchema, Map<String, InvalidValueHandler> invalidValueHandlerMap)
+        {
+            this.columnCaster = new ColumnCaster(task, inputSchema, outputSchema, invalidValueHandlerMap);
+            this.recordProcessor = columnCaster.newRecordProcessor();
+            this.pageReader = new PageReader(inputSchema);
+            this.pageBuilder = new PageBuilder(Exec.getBufferAllocator(), outputSchema, pageCollector);
+        }
+
+        List<Page> process(Page chunk)
+        {
+            pageReader.setPage(chunk);
+            while (pageReader.nextRecord()) {
+                recordProcessor.processRecord(pageReader, pageBuilder);
+                pageBuilder.addRecord();
+            }
+            pageBuilder.flush();
+            return pageCollector.take();
+        }
+
+        void close()
+        {
+            pageReader.close();
+            pageBuilder.close();
+        }
+    }
+
+    // keeps pages built by PageBuilder to pass them later
+    private static class PageCollector
+            implements PageOutput
+    {
+        private List<Page> pages = new ArrayList<>();
+
+        @Override
+        public void add(Page page)
+        {
+            pages.add(page);
+        }
+
+        List<Page> take()
+        {
+            List<Page> taken = pages;
+            pages = new ArrayList<>();
+            return taken;
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+
+// Converts the current record of PageReader into PageBuilder, without calling PageBuilder.addRecord
+public interface RecordProcessor
+{
+    void processRecord(PageReader pageReader, PageBuilder pageBuilder);
+}
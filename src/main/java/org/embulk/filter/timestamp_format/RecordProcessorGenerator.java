@@ -0,0 +1,128 @@
+package org.embulk.filter.timestamp_format;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.SimpleCompiler;
+import org.embulk.spi.Exec;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.slf4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+
+// Generates a RecordProcessor class for concrete converters with Janino.
+// Pass-through columns are inlined, and other converters are called through fields of their concrete classes,
+// so that processRecord is a straight-line code which JIT can inline across columns.
+public class RecordProcessorGenerator
+{
+    private static final Logger logger = Exec.getLogger(TimestampFormatFilterPlugin.class);
+    static final String CLASS_NAME = "GeneratedRecordProcessor";
+    // columns per method to keep each method smaller than HugeMethodLimit (8000 bytes) of HotSpot JIT
+    static final int COLUMNS_PER_METHOD = 64;
+
+    private RecordProcessorGenerator() {}
+
+    // @return null if failed to generate
+    public static RecordProcessor generate(ColumnConverter[] converters)
+    {
+        String source = generateSource(converters);
+        try {
+            SimpleCompiler compiler = new SimpleCompiler();
+            compiler.setParentClassLoader(RecordProcessorGenerator.class.getClassLoader());
+            compiler.cook(source);
+            Class<?> clazz = compiler.getClassLoader().loadClass(CLASS_NAME);
+            return (RecordProcessor) clazz.getConstructor(ColumnConverter[].class).newInstance((Object) converters);
+        }
+        catch (CompileException | ClassNotFoundException | NoSuchMethodException |
+                InstantiationException | IllegalAccessException | InvocationTargetException | RuntimeException ex) {
+            // Janino reports internal errors such as InternalCompilerException as runtime exceptions
+            logger.warn(String.format("Failed to generate a record processor, use converters as is: %s", ex.getMessage()));
+            logger.debug(source);
+            return null;
+        }
+    }
+
+    static String generateSource(ColumnConverter[] converters)
+    {
+        String readerClass = PageReader.class.getName();
+        String builderClass = PageBuilder.class.getName();
+        StringBuilder sb = new StringBuilder();
+        sb.append("public final class ").append(CLASS_NAME)
+                .append(" implements ").append(RecordProcessor.class.getName()).append(" {\n");
+
+        // fields of concrete converter classes
+        for (int i = 0; i < converters.length; i++) {
+            if (passThroughTypeName(converters[i]) == null) {
+                sb.append("    private final ").append(converters[i].getClass().getCanonicalName())
+                        .append(" converter").append(i).append(";\n");
+            }
+        }
+
+        sb.append("    public ").append(CLASS_NAME).append("(")
+                .append(ColumnConverter.class.getName()).append("[] converters) {\n");
+        for (int i = 0; i < converters.length; i++) {
+            if (passThroughTypeName(converters[i]) == null) {
+                sb.append("        this.converter").append(i).append(" = (")
+                        .append(converters[i].getClass().getCanonicalName()).append(") converters[").append(i).append("];\n");
+            }
+        }
+        sb.append("    }\n");
+
+        int methodCount = (converters.length + COLUMNS_PER_METHOD - 1) / COLUMNS_PER_METHOD;
+        sb.append("    public void processRecord(").append(readerClass).append(" pageReader, ")
+                .append(builderClass).append(" pageBuilder) {\n");
+        for (int m = 0; m < methodCount; m++) {
+            sb.append("        processRecord").append(m).append("(pageReader, pageBuilder);\n");
+        }
+        sb.append("    }\n");
+
+        for (int m = 0; m < methodCount; m++) {
+            sb.append("    private void processRecord").append(m).append("(").append(readerClass).append(" pageReader, ")
+                    .append(builderClass).append(" pageBuilder) {\n");
+            int end = Math.min(converters.length, (m + 1) * COLUMNS_PER_METHOD);
+            for (int i = m * COLUMNS_PER_METHOD; i < end; i++) {
+                ColumnConverter converter = converters[i];
+                String typeName = passThroughTypeName(converter);
+                int index = converter.getIndex();
+                if (typeName == null) {
+                    sb.append("        converter").append(i).append(".convert(pageReader, pageBuilder);\n");
+                }
+                else {
+                    sb.append("        if (pageReader.isNull(").append(index).append(")) {\n");
+                    sb.append("            pageBuilder.setNull(").append(index).append(");\n");
+                    sb.append("        }\n");
+                    sb.append("        else {\n");
+                    sb.append("            pageBuilder.set").append(typeName).append("(").append(index)
+                            .append(", pageReader.get").append(typeName).append("(").append(index).append("));\n");
+                    sb.append("        }\n");
+                }
+            }
+            sb.append("    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    // @return type name of PageReader getter and PageBuilder setter of a pass-through converter, or null for other converters
+    private static String passThroughTypeName(ColumnConverter converter)
+    {
+        if (converter instanceof ColumnConverter.BooleanPassThrough) {
+            return "Boolean";
+        }
+        else if (converter instanceof ColumnConverter.LongPassThrough) {
+            return "Long";
+        }
+        else if (converter instanceof ColumnConverter.DoublePassThrough) {
+            return "Double";
+        }
+        else if (converter instanceof ColumnConverter.StringPassThrough) {
+            return "String";
+        }
+        else if (converter instanceof ColumnConverter.TimestampPassThrough) {
+            return "Timestamp";
+        }
+        else if (converter instanceof ColumnConverter.JsonPassThrough) {
+            return "Json";
+        }
+        return null;
+    }
+}
@@ -12,6 +12,7 @@ public class TimestampFormatConverter
     public static final HashMap<String, String> RUBY_TO_JAVA_FORMAT_TABLE = new HashMap<>();
     private static final Pattern IDENTIFIER_PATTERN;
     private static final Pattern NON_IDENTIFIER_PATTERN;
+    private static final String JAVA_TIME_RESERVED_CHARS = "[]{}#";
 
     static
     {
@@ -96,6 +97,7 @@ public class TimestampFormatConverter
         RUBY_TO_JAVA_FORMAT_TABLE.put("Z", "z");
         RUBY_TO_JAVA_FORMAT_TABLE.put("z", "Z");
         //RUBY_TO_JAVA_FORMAT_TABLE.put("%", "");
+        // k, l, n, s, t, Q, % and colon offsets are parsed by CompiledTimestampParser without JRuby instead
 
         String[] array = RUBY_TO_JAVA_FORMAT_TABLE.keySet().toArray(new String[0]);
         StringBuilder keyPatternBuilder = new StringBuilder(array[0]);
@@ -133,6 +135,357 @@ public class TimestampFormatConverter
         }
     }
 
+    // Convert JRuby Time Format into Joda-Time Format for formatter, whose output is exactly the same with RubyDateFormat.
+    // Flags, widths, and directives which Joda-Time cannot print the same, such as %e (space padding), are not converted
+    // @return returns null if appropriate java format is not available
+    public static String toJavaFormatterFormat(String rubyFormat)
+    {
+        StringBuilder javaFormat = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        // digits of nnnnnnnnn or nnnnnn, which TimestampFormatter prints separately.
+        // Only one of them is available in a format, and not together with milli seconds
+        int fractionDigits = 0;
+        boolean hasMilliSecond = false;
+        int i = 0;
+        while (i < rubyFormat.length()) {
+            char c = rubyFormat.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            boolean noPadding = false;
+            int width = 0;
+            int colons = 0;
+            while (i < rubyFormat.length() && rubyFormat.charAt(i) == '-') {
+                noPadding = true;
+                i++;
+            }
+            while (i < rubyFormat.length() && rubyFormat.charAt(i) >= '0' && rubyFormat.charAt(i) <= '9') {
+                width = width * 10 + (rubyFormat.charAt(i++) - '0');
+            }
+            while (i < rubyFormat.length() && rubyFormat.charAt(i) == ':') {
+                colons++;
+                i++;
+            }
+            if (i >= rubyFormat.length()) {
+                return null;
+            }
+            char directive = rubyFormat.charAt(i++);
+            appendLiteral(javaFormat, literal, "");
+            if (directive == 'L' || directive == 'N') {
+                int digits = width > 0 ? width : (directive == 'L' ? 3 : 9);
+                if (noPadding || colons > 0) {
+                    return null;
+                }
+                if (digits <= 3) {
+                    javaFormat.append("SSS".substring(0, digits)); // milli seconds are truncated same with ruby
+                    hasMilliSecond = true;
+                    continue;
+                }
+                if ((digits != 6 && digits != 9) || (fractionDigits != 0 && fractionDigits != digits)) {
+                    return null;
+                }
+                fractionDigits = digits;
+                javaFormat.append("nnnnnnnnn".substring(0, digits));
+                continue;
+            }
+            if (width > 0 || (colons > 0 && directive != 'z')) {
+                return null;
+            }
+            String pattern = toJavaFormatterPattern(directive, noPadding, colons);
+            if (pattern == null) {
+                return null;
+            }
+            javaFormat.append(pattern);
+        }
+        if (fractionDigits != 0 && hasMilliSecond) {
+            return null;
+        }
+        appendLiteral(javaFormat, literal, "");
+        return javaFormat.toString();
+    }
+
+    private static String toJavaFormatterPattern(char directive, boolean noPadding, int colons)
+    {
+        switch (directive) {
+            case 'Y':
+                return noPadding ? null : "yyyy";
+            case 'C':
+                return noPadding ? null : "CC";
+            case 'y':
+                return noPadding ? null : "yy";
+            case 'm':
+                return noPadding ? "M" : "MM";
+            case 'd':
+                return noPadding ? "d" : "dd";
+            case 'e':
+                return noPadding ? "d" : null; // no space padding in Joda-Time
+            case 'j':
+                return noPadding ? "D" : "DDD";
+            case 'H':
+                return noPadding ? "H" : "HH";
+            case 'k':
+                return noPadding ? "H" : null;
+            case 'I':
+                return noPadding ? "h" : "hh";
+            case 'l':
+                return noPadding ? "h" : null;
+            case 'M':
+                return noPadding ? "m" : "mm";
+            case 'S':
+                return noPadding ? "s" : "ss";
+            case 'u':
+                return "e";
+            case 'z':
+                return colons == 0 ? "Z" : colons == 1 ? "ZZ" : null; // +0900 and +09:00 even for UTC
+            case 'a':
+                return "EEE";
+            case 'A':
+                return "EEEE";
+            case 'b':
+            case 'h':
+                return "MMM";
+            case 'B':
+                return "MMMM";
+            case 'p':
+                return "a";
+            case 'F':
+                return "yyyy-MM-dd";
+            case 'T':
+            case 'X':
+                return "HH:mm:ss";
+            case 'R':
+                return "HH:mm";
+            case 'r':
+                return "hh:mm:ss a";
+            case 'D':
+            case 'x':
+                return "MM/dd/yy";
+            case 'n':
+                return "\n";
+            case 't':
+                return "\t";
+            default:
+                return null; // %Z, %P, %s, %c, %v, week based fields, and %% which makes TimestampFormatter regard a format as ruby
+        }
+    }
+
+    // Convert JRuby Time Format or Joda-Time Format into java.time Format for timestamp_parser/timestamp_formatter: java_time.
+    // Formats whose parser or formatter would behave differently, e.g., 2 digit years of the parser, are not converted
+    // @return returns null if appropriate java.time format is not available
+    public static String toJavaTimeFormat(String format, boolean forParser)
+    {
+        if (!format.contains("%")) {
+            return javaToJavaTimeFormat(format, forParser);
+        }
+        StringBuilder javaTimeFormat = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            // flags, width and colons such as %-d, %3N and %:z
+            boolean noPadding = false;
+            int width = 0;
+            int colons = 0;
+            while (i < format.length() && format.charAt(i) == '-') {
+                noPadding = true;
+                i++;
+            }
+            while (i < format.length() && format.charAt(i) >= '0' && format.charAt(i) <= '9') {
+                width = width * 10 + (format.charAt(i++) - '0');
+            }
+            while (i < format.length() && format.charAt(i) == ':') {
+                colons++;
+                i++;
+            }
+            if (i >= format.length()) {
+                return null;
+            }
+            String pattern = toJavaTimePattern(format.charAt(i++), noPadding, width, colons, forParser);
+            if (pattern == null) {
+                return null;
+            }
+            appendLiteral(javaTimeFormat, literal, JAVA_TIME_RESERVED_CHARS);
+            javaTimeFormat.append(pattern);
+        }
+        appendLiteral(javaTimeFormat, literal, JAVA_TIME_RESERVED_CHARS);
+        return javaTimeFormat.toString();
+    }
+
+    private static String toJavaTimePattern(char directive, boolean noPadding, int width, int colons, boolean forParser)
+    {
+        if (colons > 0) {
+            if (directive != 'z' || colons > 2 || width > 0) {
+                return null;
+            }
+            return colons == 1 ? (forParser ? "XXX" : "xxx") : (forParser ? "XXXXX" : "xxxxx");
+        }
+        if (directive == 'L' || directive == 'N') {
+            int digits = width > 0 ? width : (directive == 'L' ? 3 : 9);
+            return digits <= 9 ? "SSSSSSSSS".substring(0, digits) : null;
+        }
+        if (width > 0) {
+            return null;
+        }
+        switch (directive) {
+            case 'Y':
+                return "uuuu";
+            case 'y':
+                return forParser ? null : "uu"; // the parser assumes 2000-2099 while ruby assumes 1969-2068
+            case 'm':
+                return noPadding ? "M" : "MM";
+            case 'B':
+                return "MMMM";
+            case 'b':
+                return "MMM";
+            case 'h':
+                return "MMM";
+            case 'd':
+                return noPadding ? "d" : "dd";
+            case 'e':
+                return noPadding ? "d" : "ppd";
+            case 'j':
+                return noPadding ? "D" : "DDD";
+            case 'H':
+                return noPadding ? "H" : "HH";
+            case 'k':
+                return noPadding ? "H" : "ppH";
+            case 'I':
+                return noPadding ? "h" : "hh";
+            case 'l':
+                return noPadding ? "h" : "pph";
+            case 'M':
+                return noPadding ? "m" : "mm";
+            case 'S':
+                return noPadding ? "s" : "ss";
+            case 'p':
+                return "a";
+            case 'P':
+                return forParser ? "a" : null; // no lower case am/pm in the formatter
+            case 'A':
+                return "EEEE";
+            case 'a':
+                return "EEE";
+            case 'Z':
+                return "z";
+            case 'z':
+                return forParser ? "XX" : "xx";
+            case 'F':
+                return "uuuu-MM-dd";
+            case 'T':
+                return "HH:mm:ss";
+            case 'X':
+                return "HH:mm:ss";
+            case 'R':
+                return "HH:mm";
+            case 'r':
+                return "hh:mm:ss a";
+            case 'c':
+                return "EEE MMM ppd HH:mm:ss uuuu";
+            case 'D':
+                return forParser ? null : "MM/dd/uu";
+            case 'x':
+                return forParser ? null : "MM/dd/uu";
+            case 'v':
+                return forParser ? "ppd-MMM-uuuu" : null; // no upper case month names in the formatter
+            case 'n':
+                return forParser ? null : "\n"; // ruby parser accepts any white spaces
+            case 't':
+                return forParser ? null : "\t";
+            case '%':
+                return "%";
+            default:
+                return null;
+        }
+    }
+
+    // Joda-Time and java.time patterns mostly share letters, but offsets, fractions and week based fields differ
+    private static String javaToJavaTimeFormat(String javaFormat, boolean forParser)
+    {
+        StringBuilder javaTimeFormat = new StringBuilder();
+        StringBuilder literal = new StringBuilder(); // unquoted, which is quoted again with java.time reserved chars
+        int i = 0;
+        while (i < javaFormat.length()) {
+            char c = javaFormat.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < javaFormat.length() && javaFormat.charAt(i + 1) == '\'') {
+                    literal.append('\'');
+                    i += 2;
+                    continue;
+                }
+                for (i++; i < javaFormat.length(); i++) {
+                    if (javaFormat.charAt(i) == '\'') {
+                        if (i + 1 >= javaFormat.length() || javaFormat.charAt(i + 1) != '\'') {
+                            break;
+                        }
+                        i++; // '' in a quoted text
+                    }
+                    literal.append(javaFormat.charAt(i));
+                }
+                i++;
+                continue;
+            }
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            appendLiteral(javaTimeFormat, literal, JAVA_TIME_RESERVED_CHARS);
+            int end = i;
+            while (end < javaFormat.length() && javaFormat.charAt(end) == c) {
+                end++;
+            }
+            int count = end - i;
+            if (c == 'n') {
+                javaTimeFormat.append("SSSSSSSSS".substring(0, Math.min(count, 9))); // nnnnnnnnn of this plugin
+            }
+            else if (c == 'Z') {
+                javaTimeFormat.append(count == 1 ? (forParser ? "XX" : "xx") : count == 2 ? (forParser ? "XXX" : "xxx") : "VV");
+            }
+            else if (c == 'y' && count == 2 && forParser) {
+                return null; // pivot years differ
+            }
+            else if ("GyMdDEahHkKmsSz".indexOf(c) >= 0) {
+                javaTimeFormat.append(javaFormat, i, end);
+            }
+            else {
+                return null; // week based fields and centuries
+            }
+            i = end;
+        }
+        appendLiteral(javaTimeFormat, literal, JAVA_TIME_RESERVED_CHARS);
+        return javaTimeFormat.toString();
+    }
+
+    // appends and clears literal. Letters, single quotes, and reservedChars are quoted, and consecutive ones are
+    // quoted together because adjacent quoted texts such as 'a''b' mean "a'b"
+    private static void appendLiteral(StringBuilder format, StringBuilder literal, String reservedChars)
+    {
+        int i = 0;
+        while (i < literal.length()) {
+            int end = i;
+            while (end < literal.length() && needsQuote(literal.charAt(end), reservedChars)) {
+                end++;
+            }
+            if (end == i) {
+                format.append(literal.charAt(i++));
+                continue;
+            }
+            format.append('\'').append(literal.substring(i, end).replace("'", "''")).append('\'');
+            i = end;
+        }
+        literal.setLength(0);
+    }
+
+    private static boolean needsQuote(char c, String reservedChars)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '\'' || reservedChars.indexOf(c) >= 0;
+    }
+
     private static String quoteFormat(String rubyFormat)
     {
         Matcher match = NON_IDENTIFIER_PATTERN.matcher(rubyFormat);
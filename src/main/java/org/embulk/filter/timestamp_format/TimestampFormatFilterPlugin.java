@@ -50,9 +50,21 @@ public class TimestampFormatFilterPlugin implements FilterPlugin
         @ConfigDefault("null")
         Optional<TimestampUnit> getFromUnit();
 
+        @Config("from_string_unit")
+        @ConfigDefault("null")
+        Optional<TimestampUnit> getFromStringUnit();
+
         @Config("to_unit")
         @ConfigDefault("null")
         Optional<TimestampUnit> getToUnit();
+
+        @Config("cache_size")
+        @ConfigDefault("0")
+        Integer getCacheSize();
+
+        @Config("cache_policy")
+        @ConfigDefault("\"lru\"") // or clock
+        String getCachePolicy();
     }
 
     interface PluginTask extends Task,
@@ -66,10 +78,42 @@ public class TimestampFormatFilterPlugin implements FilterPlugin
         @ConfigDefault("false")
         Boolean getStopOnInvalidRecord();
 
+        @Config("invalid_value_log_limit")
+        @ConfigDefault("100") // -1 for unlimited
+        Long getInvalidValueLogLimit();
+
+        @Config("invalid_value_summary_interval")
+        @ConfigDefault("60") // seconds, 0 to disable
+        Long getInvalidValueSummaryInterval();
+
+        @Config("metrics")
+        @ConfigDefault("false")
+        Boolean getMetrics();
+
+        @Config("metrics_file")
+        @ConfigDefault("null")
+        Optional<String> getMetricsFile();
+
         @Config("timestamp_parser")
-        @ConfigDefault("\"auto\"") // or auto_java
+        @ConfigDefault("\"auto\"") // or auto_java, java_time
         String getTimeStampParser();
 
+        @Config("timestamp_formatter")
+        @ConfigDefault("\"auto\"") // or auto_java, java_time
+        String getTimestampFormatter();
+
+        @Config("record_processor")
+        @ConfigDefault("\"converter\"") // or generated
+        String getRecordProcessor();
+
+        @Config("parallelism")
+        @ConfigDefault("1")
+        Integer getParallelism();
+
+        @Config("adaptive_format_order")
+        @ConfigDefault("false")
+        Boolean getAdaptiveFormatOrder();
+
         @Config("default_from_timestamp_unit")
         @ConfigDefault("\"second\"")
         TimestampUnit getDefaultFromTimestampUnit();
@@ -93,10 +137,45 @@ public class TimestampFormatFilterPlugin implements FilterPlugin
         control.run(task.dump(), outputSchema);
     }
 
+    private static boolean isJavaTimeAvailable()
+    {
+        try {
+            Class.forName("java.time.format.DateTimeFormatter");
+            return true;
+        }
+        catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
     private void configure(PluginTask task, Schema inputSchema)
     {
         List<ColumnConfig> columns = task.getColumns();
 
+        String recordProcessor = task.getRecordProcessor();
+        if (!recordProcessor.equals("converter") && !recordProcessor.equals("generated")) {
+            throw new ConfigException(String.format("record_processor must be converter or generated: \"%s\"", recordProcessor));
+        }
+
+        String timestampFormatter = task.getTimestampFormatter();
+        if (!timestampFormatter.equals("auto") && !timestampFormatter.equals("auto_java") && !timestampFormatter.equals("java_time")) {
+            throw new ConfigException(String.format("timestamp_formatter must be auto, auto_java, or java_time: \"%s\"", timestampFormatter));
+        }
+        if ((task.getTimeStampParser().equals("java_time") || timestampFormatter.equals("java_time")) && !isJavaTimeAvailable()) {
+            throw new ConfigException("java_time requires Java 8 or later");
+        }
+
+        if (task.getInvalidValueLogLimit() < -1) {
+            throw new ConfigException(String.format("invalid_value_log_limit must be -1 or greater: %d", task.getInvalidValueLogLimit()));
+        }
+        if (task.getInvalidValueSummaryInterval() < 0) {
+            throw new ConfigException(String.format("invalid_value_summary_interval must not be negative: %d", task.getInvalidValueSummaryInterval()));
+        }
+
+        if (task.getParallelism() < 1) {
+            throw new ConfigException(String.format("parallelism must be greater than 0: %d", task.getParallelism()));
+        }
+
         // throw if column does not exist
         for (ColumnConfig columnConfig : columns) {
             String name = columnConfig.getName();
@@ -109,6 +188,18 @@ public class TimestampFormatFilterPlugin implements FilterPlugin
             }
         }
 
+        // throw if cache option is invalid
+        for (ColumnConfig columnConfig : columns) {
+            String name = columnConfig.getName();
+            if (columnConfig.getCacheSize() < 0) {
+                throw new ConfigException(String.format("cache_size must not be negative: \"%s\"", name));
+            }
+            String cachePolicy = columnConfig.getCachePolicy();
+            if (!cachePolicy.equals("lru") && !cachePolicy.equals("clock")) {
+                throw new ConfigException(String.format("cache_policy must be lru or clock: \"%s\"", name));
+            }
+        }
+
         // throw if column type is not supported
         for (ColumnConfig columnConfig : columns) {
             String name = columnConfig.getName();
@@ -160,14 +251,23 @@ public class TimestampFormatFilterPlugin implements FilterPlugin
     {
         final PluginTask task = taskSource.loadTask(PluginTask.class);
 
+        if (task.getParallelism() > 1) {
+            return new ParallelPageOutput(task, inputSchema, outputSchema, output, task.getParallelism());
+        }
+
         return new PageOutput() {
             private PageReader pageReader = new PageReader(inputSchema);
             private PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), outputSchema, output);
-            private ColumnVisitorImpl visitor = new ColumnVisitorImpl(task, inputSchema, outputSchema, pageReader, pageBuilder);
+            private ColumnCaster columnCaster = new ColumnCaster(task, inputSchema, outputSchema);
+            private RecordProcessor recordProcessor = columnCaster.newRecordProcessor();
 
             @Override
             public void finish()
             {
+                columnCaster.finish();
+                if (task.getMetrics()) {
+                    columnCaster.getMetrics().report(task.getMetricsFile().orNull());
+                }
                 pageBuilder.finish();
             }
 
@@ -183,7 +283,7 @@ public class TimestampFormatFilterPlugin implements FilterPlugin
                 pageReader.setPage(page);
 
                 while (pageReader.nextRecord()) {
-                    inputSchema.visitColumns(visitor);
+                    recordProcessor.processRecord(pageReader, pageBuilder);
                     pageBuilder.addRecord();
                 }
             }
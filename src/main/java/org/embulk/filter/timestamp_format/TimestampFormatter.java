@@ -44,11 +44,28 @@ public class TimestampFormatter
         Optional<String> getToFormat();
     }
 
+    private static final int NO_CACHE = 0;
+    private static final int SECOND_CACHE = 1; // output depends on the epoch second and sub-second fields
+    private static final int DAY_CACHE = 2; // output depends only on the local date and the time zone offset
+
     private final RubyDateFormat jrubyFormatter;
-    private final DateTimeFormatter javaFormatter;
-    private boolean handleNanoResolution = false;
-    private boolean handleMicroResolution = false;
+    private final CompiledTimestampFormatter compiledFormatter;
+    private final DateTimeFormatter[] javaFormatters; // segments split by nnnnnnnnn or nnnnnn, null for an empty segment
+    private final JavaTimeTimestampFormatter javaTimeFormatter; // used instead of the above if timestamp_formatter is java_time
+    private int fractionDigits = 0;
     private final DateTimeZone toTimeZone;
+    private final StringBuilder buffer = new StringBuilder();
+
+    // cache of the last formatted output, valid for epoch seconds in [cacheFrom, cacheUntil).
+    // Only sub-second fields at fractionPositions are rewritten on hit
+    private final int cacheLevel;
+    private long cacheFrom = 0;
+    private long cacheUntil = 0;
+    private String cachedText;
+    private final int[] fractionWidths;
+    private final int[] fractionPositions;
+    private long cacheHitCount = 0;
+    private long cacheMissCount = 0;
 
     public TimestampFormatter(PluginTask task, Optional<? extends TimestampColumnOption> columnOption)
     {
@@ -64,26 +81,95 @@ public class TimestampFormatter
     public TimestampFormatter(ScriptingContainer jruby, String format, DateTimeZone toTimeZone)
     {
         this.toTimeZone = toTimeZone;
+        this.javaTimeFormatter = null;
         if (format.contains("%")) {
-            this.javaFormatter = null;
+            this.javaFormatters = null;
             this.jrubyFormatter = new RubyDateFormat(format, Locale.ENGLISH, true);
+            this.compiledFormatter = CompiledTimestampFormatter.compile(format, toTimeZone);
+            if (compiledFormatter == null) {
+                this.cacheLevel = NO_CACHE;
+                this.fractionWidths = new int[0];
+            }
+            else {
+                this.cacheLevel = compiledFormatter.isDateOnly() ? DAY_CACHE : SECOND_CACHE;
+                this.fractionWidths = new int[compiledFormatter.getFractionCount()];
+                for (int i = 0; i < fractionWidths.length; i++) {
+                    fractionWidths[i] = compiledFormatter.getFractionWidth(i);
+                }
+            }
         }
         else {
             this.jrubyFormatter = null;
+            this.compiledFormatter = null;
+            String[] segments;
             if (format.contains("nnnnnnnnn")) {
-                this.handleNanoResolution = true;
-                String newFormat = format.replaceAll("nnnnnnnnn", "'%09d'");
-                this.javaFormatter = DateTimeFormat.forPattern(newFormat).withLocale(Locale.ENGLISH).withZone(toTimeZone);
+                this.fractionDigits = 9;
+                segments = format.split("nnnnnnnnn", -1);
             }
             else if (format.contains("nnnnnn")) {
-                this.handleMicroResolution = true;
-                String newFormat = format.replaceAll("nnnnnn", "'%06d'");
-                this.javaFormatter = DateTimeFormat.forPattern(newFormat).withLocale(Locale.ENGLISH).withZone(toTimeZone);
+                this.fractionDigits = 6;
+                segments = format.split("nnnnnn", -1);
             }
             else {
-                this.javaFormatter = DateTimeFormat.forPattern(format).withLocale(Locale.ENGLISH).withZone(toTimeZone);
+                segments = new String[] {format};
+            }
+            this.javaFormatters = new DateTimeFormatter[segments.length];
+            int cacheLevel = DAY_CACHE;
+            for (int i = 0; i < segments.length; i++) {
+                if (!segments[i].isEmpty()) {
+                    javaFormatters[i] = DateTimeFormat.forPattern(segments[i]).withLocale(Locale.ENGLISH).withZone(toTimeZone);
+                    cacheLevel = Math.min(cacheLevel, getJavaCacheLevel(segments[i]));
+                }
+            }
+            this.fractionWidths = new int[segments.length - 1];
+            for (int i = 0; i < fractionWidths.length; i++) {
+                fractionWidths[i] = fractionDigits;
+            }
+            this.cacheLevel = fractionWidths.length > 0 ? Math.min(cacheLevel, SECOND_CACHE) : cacheLevel;
+        }
+        this.fractionPositions = new int[fractionWidths.length];
+    }
+
+    // formats a java.time pattern converted by TimestampFormatConverter.toJavaTimeFormat in nano second resolution
+    public static TimestampFormatter ofJavaTime(String javaTimeFormat, DateTimeZone toTimeZone)
+    {
+        return new TimestampFormatter(new JavaTimeTimestampFormatter(javaTimeFormat, toTimeZone), toTimeZone);
+    }
+
+    private TimestampFormatter(JavaTimeTimestampFormatter javaTimeFormatter, DateTimeZone toTimeZone)
+    {
+        this.toTimeZone = toTimeZone;
+        this.javaTimeFormatter = javaTimeFormatter;
+        this.jrubyFormatter = null;
+        this.compiledFormatter = null;
+        this.javaFormatters = null;
+        this.cacheLevel = NO_CACHE;
+        this.fractionWidths = new int[0];
+        this.fractionPositions = new int[0];
+    }
+
+    private static int getJavaCacheLevel(String pattern)
+    {
+        int cacheLevel = DAY_CACHE;
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            else if (!quoted && ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                if ("GCYyxweEDMdzZ".indexOf(c) >= 0) {
+                    continue;
+                }
+                else if ("aKhHkms".indexOf(c) >= 0) {
+                    cacheLevel = SECOND_CACHE;
+                }
+                else {
+                    return NO_CACHE; // milli seconds (S) are not cached
+                }
             }
         }
+        return cacheLevel;
     }
 
     public DateTimeZone getToTimeZone()
@@ -91,19 +177,113 @@ public class TimestampFormatter
         return toTimeZone;
     }
 
+    public long getCacheHitCount()
+    {
+        return cacheHitCount;
+    }
+
+    public long getCacheMissCount()
+    {
+        return cacheMissCount;
+    }
+
     public void format(Timestamp value, LineEncoder encoder)
     {
-        // TODO optimize by directly appending to internal buffer
         encoder.addText(format(value));
     }
 
     public String format(Timestamp value)
     {
-        if (jrubyFormatter != null) {
-            return jrubyFormat(value);
+        return format(value.getEpochSecond(), value.getNano());
+    }
+
+    // formats into the internal buffer, and allocates only the result String
+    public String format(long epochSecond, int nano)
+    {
+        if (fractionWidths.length == 0 && epochSecond >= cacheFrom && epochSecond < cacheUntil) {
+            cacheHitCount++;
+            return cachedText;
         }
-        else if (javaFormatter != null) {
-            return javaFormat(value);
+        buffer.setLength(0);
+        format(epochSecond, nano, buffer);
+        if (fractionWidths.length == 0 && epochSecond >= cacheFrom && epochSecond < cacheUntil) {
+            return cachedText; // cached by the miss above
+        }
+        return buffer.toString();
+    }
+
+    // appends the formatted value to a caller-supplied buffer
+    public void format(long epochSecond, int nano, StringBuilder buffer)
+    {
+        if (cacheLevel == NO_CACHE) {
+            formatWithoutCache(epochSecond, nano, buffer);
+            return;
+        }
+        int start = buffer.length();
+        if (epochSecond >= cacheFrom && epochSecond < cacheUntil) {
+            cacheHitCount++;
+            buffer.append(cachedText);
+            for (int i = 0; i < fractionWidths.length; i++) {
+                int width = fractionWidths[i];
+                long fraction = nano / CompiledTimestampParser.POW10[9 - width];
+                for (int pos = start + fractionPositions[i] + width - 1; pos >= start + fractionPositions[i]; pos--) {
+                    buffer.setCharAt(pos, (char) ('0' + fraction % 10));
+                    fraction /= 10;
+                }
+            }
+            return;
+        }
+        cacheMissCount++;
+        if (formatWithoutCache(epochSecond, nano, buffer)) {
+            for (int i = 0; i < fractionPositions.length; i++) {
+                fractionPositions[i] -= start;
+            }
+            cachedText = buffer.substring(start);
+            setCacheRange(epochSecond);
+        }
+        else {
+            cacheUntil = cacheFrom; // invalidate
+        }
+    }
+
+    private void setCacheRange(long epochSecond)
+    {
+        if (cacheLevel == SECOND_CACHE) {
+            cacheFrom = epochSecond;
+            cacheUntil = epochSecond + 1;
+            return;
+        }
+        // local day which contains epochSecond, clipped by time zone transitions
+        long millis = epochSecond * 1000;
+        long localSecond = epochSecond + toTimeZone.getOffset(millis) / 1000;
+        long secondOfDay = localSecond - floorDiv(localSecond, 86400) * 86400;
+        long from = epochSecond - secondOfDay;
+        long until = from + 86400;
+        long transition = toTimeZone.nextTransition(from * 1000);
+        if (transition != from * 1000 && transition <= millis) {
+            from = epochSecond; // transition between the start of the day and epochSecond
+        }
+        transition = toTimeZone.nextTransition(millis);
+        if (transition != millis && transition < until * 1000) {
+            until = Math.max(floorDiv(transition, 1000), epochSecond + 1);
+        }
+        cacheFrom = from;
+        cacheUntil = until;
+    }
+
+    // @return returns true if the output can be cached, and fractionPositions are set then
+    private boolean formatWithoutCache(long epochSecond, int nano, StringBuilder buffer)
+    {
+        if (javaTimeFormatter != null) {
+            javaTimeFormatter.format(epochSecond, nano, buffer);
+            return false;
+        }
+        else if (jrubyFormatter != null) {
+            return jrubyFormat(epochSecond, nano, buffer);
+        }
+        else if (javaFormatters != null) {
+            javaFormat(epochSecond, nano, buffer);
+            return true;
         }
         else {
             assert false;
@@ -111,27 +291,45 @@ public class TimestampFormatter
         }
     }
 
-    private String jrubyFormat(Timestamp value)
+    private boolean jrubyFormat(long epochSecond, int nano, StringBuilder buffer)
     {
-        // TODO optimize by using reused StringBuilder
-        jrubyFormatter.setDateTime(new DateTime(value.getEpochSecond() * 1000, toTimeZone));
-        jrubyFormatter.setNSec(value.getNano());
-        return jrubyFormatter.format(null);
+        if (compiledFormatter != null && compiledFormatter.format(epochSecond, nano, buffer)) {
+            for (int i = 0; i < fractionPositions.length; i++) {
+                fractionPositions[i] = compiledFormatter.getFractionPosition(i);
+            }
+            return true;
+        }
+        jrubyFormatter.setDateTime(new DateTime(epochSecond * 1000, toTimeZone));
+        jrubyFormatter.setNSec(nano);
+        buffer.append(jrubyFormatter.format(null));
+        return false;
     }
 
-    private String javaFormat(Timestamp value)
+    private void javaFormat(long epochSecond, int nano, StringBuilder buffer)
     {
-        if (handleNanoResolution) {
-            String datetimeFormatted = javaFormatter.print(value.getEpochSecond() * 1000);
-            return String.format(datetimeFormatted, value.getNano());
+        if (fractionDigits == 0) {
+            long milliSecond = epochSecond * 1000 + nano / 1000000;
+            javaFormatters[0].printTo(buffer, milliSecond);
+            return;
         }
-        else if (handleMicroResolution) {
-            String datetimeFormatted = javaFormatter.print(value.getEpochSecond() * 1000);
-            return String.format(datetimeFormatted, value.getNano() / 1000);
+        int fraction = fractionDigits == 9 ? nano : nano / 1000;
+        for (int i = 0; i < javaFormatters.length; i++) {
+            if (i > 0) {
+                fractionPositions[i - 1] = buffer.length();
+                CompiledTimestampFormatter.appendNumber(buffer, fraction, fractionDigits, '0');
+            }
+            if (javaFormatters[i] != null) {
+                javaFormatters[i].printTo(buffer, epochSecond * 1000);
+            }
         }
-        else {
-            long milliSecond = value.getEpochSecond() * 1000 + value.getNano() / 1000000;
-            return javaFormatter.print(milliSecond);
+    }
+
+    private static long floorDiv(long x, long y)
+    {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
         }
+        return r;
     }
 }
@@ -8,20 +8,24 @@ import org.embulk.config.ConfigDefault;
 import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.PluginTask;
 
 import org.embulk.spi.time.JRubyTimeParserHelper;
-import org.embulk.spi.time.JRubyTimeParserHelperFactory;
 import org.embulk.spi.time.Timestamp;
 
 import static org.embulk.spi.time.TimestampFormat.parseDateTimeZone;
 
 import org.embulk.spi.time.TimestampParseException;
-import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
 import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.DateTimeParser;
+import org.joda.time.format.DateTimeParserBucket;
 import org.jruby.embed.ScriptingContainer;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -48,11 +52,57 @@ public class TimestampParser {
         Optional<List<String>> getFromFormat();
     }
 
+    // helpers of compilable formats are created on the first value the compiled parser misses, null until then
     private final List<JRubyTimeParserHelper> jrubyParserList = new ArrayList<>();
+    private final List<String> jrubyFormatList = new ArrayList<>();
+    private final JRubyHelperFactory helperFactory;
     private final List<DateTimeFormatter> javaParserList = new ArrayList<>();
+    // reused to parse with javaParserList without exceptions, parser is null if the format is not parsable
+    private final List<DateTimeParser> javaDateTimeParserList = new ArrayList<>();
+    private final List<DateTimeParserBucket> javaParserBucketList = new ArrayList<>();
+    // compiled fast paths corresponding to jrubyParserList and javaParserList, null if not available
+    private final List<CompiledTimestampParser> compiledJRubyParserList = new ArrayList<>();
+    private final List<CompiledTimestampParser> compiledJavaParserList = new ArrayList<>();
     private final List<Boolean> handleNanoResolutionList = new ArrayList<>();
+    // used instead of the above if timestamp_parser is java_time, null otherwise
+    private final JavaTimeTimestampParser javaTimeParser;
+    // used instead of the above if from_format has auto, null otherwise
+    private final AutoFormatParser autoFormatParser;
     private final DateTimeZone defaultFromTimeZone;
     private final Pattern nanoSecPattern = Pattern.compile("\\.(\\d+)");
+    private static final long NANO_OVERFLOW = Long.MIN_VALUE;
+
+    // zone text parsed by JRuby => DateTimeZone, absent for invalid names
+    private static final int ZONE_CACHE_SIZE = 64;
+    private final Map<String, Optional<DateTimeZone>> zoneCache = new LinkedHashMap<String, Optional<DateTimeZone>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Optional<DateTimeZone>> eldest) {
+            return size() > ZONE_CACHE_SIZE;
+        }
+    };
+    private DateTimeZone lastTimeZone = null;
+    private boolean lastTimeZoneFixed = false;
+    private int lastFixedOffsetMillis = 0;
+
+    // adaptive format order. Formats are tried in formatOrder, which is reordered by hit counts periodically.
+    // Every SAMPLE_INTERVAL-th value is tried with all formats, and formats which matched the same value are
+    // never reordered against the config order, so that the first matched format is kept for such values
+    private static final int SAMPLE_INTERVAL = 1024;
+    private static final int REORDER_INTERVAL = 16384;
+    private final List<String> formatList;
+    private final boolean adaptiveFormatOrder;
+    private int[] formatOrder;
+    private long[] formatHitCounts;
+    private boolean[][] formatConflicts;
+    private long hitCount = 0;
+
+    // raw text => parsed timestamp and its format, null if not cached
+    private ValueCache<String, ValueCache.Entry<Timestamp>> cache = null;
+    // format which parsed the last value, null if parsed by from_unit
+    private String lastFormat = null;
+
+    // decimal strings are parsed as epoch numbers of the unit before formats, null if not configured
+    private TimestampUnit fromUnit = null;
 
     TimestampParser(PluginTask task) {
         this(task.getJRuby(), task.getDefaultFromTimestampFormat(), task.getDefaultFromTimeZone());
@@ -65,37 +115,199 @@ public class TimestampParser {
     }
 
     public TimestampParser(ScriptingContainer jruby, List<String> formatList, DateTimeZone defaultFromTimeZone) {
-        JRubyTimeParserHelperFactory helperFactory = (JRubyTimeParserHelperFactory) jruby.runScriptlet("Embulk::Java::TimeParserHelper::Factory.new");
+        this(jruby, formatList, defaultFromTimeZone, false);
+    }
+
+    public TimestampParser(ScriptingContainer jruby, List<String> formatList, DateTimeZone defaultFromTimeZone, boolean adaptiveFormatOrder) {
+        this(new JRubyHelperFactory(jruby), formatList, defaultFromTimeZone, adaptiveFormatOrder);
+    }
 
-        // TODO get default current time from ExecTask.getExecTimestamp
+    // helperFactory is shared among parsers of a task, and JRuby is used only if formatList has ruby formats
+    // which are not compilable or values which compiled parsers miss
+    public TimestampParser(JRubyHelperFactory helperFactory, List<String> formatList, DateTimeZone defaultFromTimeZone, boolean adaptiveFormatOrder) {
+        this.javaTimeParser = null;
+        this.autoFormatParser = null;
+        this.helperFactory = helperFactory;
         for (String format : formatList) {
             if (format.contains("%")) {
-                JRubyTimeParserHelper helper = (JRubyTimeParserHelper) helperFactory.newInstance(format, 1970, 1, 1, 0, 0, 0, 0);  // TODO default time zone
-                this.jrubyParserList.add(helper);
+                CompiledTimestampParser compiled = CompiledTimestampParser.compileRubyFormat(format, defaultFromTimeZone);
+                this.jrubyParserList.add(compiled == null ? helperFactory.newHelper(format) : null);
+                this.jrubyFormatList.add(format);
+                this.compiledJRubyParserList.add(compiled);
             } else {
+                this.compiledJavaParserList.add(CompiledTimestampParser.compileJavaFormat(format, defaultFromTimeZone));
                 // special treatment for nano resolution. n is not originally supported by Joda-Time
                 if (format.contains("nnnnnnnnn")) {
                     this.handleNanoResolutionList.add(true);
                     String newFormat = format.replaceAll("n", "S");
                     DateTimeFormatter parser = DateTimeFormat.forPattern(newFormat).withLocale(Locale.ENGLISH).withZone(defaultFromTimeZone);
-                    this.javaParserList.add(parser);
+                    addJavaParser(parser, defaultFromTimeZone);
                 }
                 else {
                     this.handleNanoResolutionList.add(false);
                     DateTimeFormatter parser = DateTimeFormat.forPattern(format).withLocale(Locale.ENGLISH).withZone(defaultFromTimeZone);
-                    this.javaParserList.add(parser);
+                    addJavaParser(parser, defaultFromTimeZone);
                 }
             }
         }
         this.defaultFromTimeZone = defaultFromTimeZone;
+
+        // if any ruby format exists, only ruby formats are used
+        List<String> usedFormatList = new ArrayList<>();
+        for (String format : formatList) {
+            if (format.contains("%") == !jrubyParserList.isEmpty()) {
+                usedFormatList.add(format);
+            }
+        }
+        this.formatList = usedFormatList;
+        this.adaptiveFormatOrder = adaptiveFormatOrder;
+        initFormatOrder();
+    }
+
+    // parses java.time patterns converted by TimestampFormatConverter.toJavaTimeFormat in nano second resolution
+    public static TimestampParser ofJavaTime(List<String> javaTimeFormatList, DateTimeZone defaultFromTimeZone, boolean adaptiveFormatOrder) {
+        return new TimestampParser(new JavaTimeTimestampParser(javaTimeFormatList, defaultFromTimeZone),
+                javaTimeFormatList, defaultFromTimeZone, adaptiveFormatOrder);
+    }
+
+    private TimestampParser(JavaTimeTimestampParser javaTimeParser, List<String> formatList, DateTimeZone defaultFromTimeZone, boolean adaptiveFormatOrder) {
+        this.javaTimeParser = javaTimeParser;
+        this.autoFormatParser = null;
+        this.helperFactory = null;
+        this.defaultFromTimeZone = defaultFromTimeZone;
+        this.formatList = formatList;
+        this.adaptiveFormatOrder = adaptiveFormatOrder;
+        initFormatOrder();
+    }
+
+    // detects layouts of values, see AutoFormatParser
+    public static TimestampParser ofAutoFormat(AutoFormatParser autoFormatParser, DateTimeZone defaultFromTimeZone) {
+        return new TimestampParser(autoFormatParser, defaultFromTimeZone);
+    }
+
+    private TimestampParser(AutoFormatParser autoFormatParser, DateTimeZone defaultFromTimeZone) {
+        this.javaTimeParser = null;
+        this.autoFormatParser = autoFormatParser;
+        this.helperFactory = null;
+        this.defaultFromTimeZone = defaultFromTimeZone;
+        this.formatList = Collections.singletonList(AutoFormatParser.AUTO_FORMAT);
+        this.adaptiveFormatOrder = false;
+        initFormatOrder();
+    }
+
+    private void initFormatOrder() {
+        this.formatOrder = new int[formatList.size()];
+        for (int i = 0; i < formatOrder.length; i++) {
+            formatOrder[i] = i;
+        }
+        this.formatHitCounts = new long[formatList.size()];
+        this.formatConflicts = new boolean[formatList.size()][formatList.size()];
+    }
+
+    private void addJavaParser(DateTimeFormatter parser, DateTimeZone defaultFromTimeZone) {
+        this.javaParserList.add(parser);
+        this.javaDateTimeParserList.add(parser.getParser());
+        // same with DateTimeFormatter.parseDateTime
+        this.javaParserBucketList.add(new DateTimeParserBucket(0L, ISOChronology.getInstance(defaultFromTimeZone),
+                Locale.ENGLISH, parser.getPivotYear(), parser.getDefaultYear()));
     }
 
     public DateTimeZone getDefaultFromTimeZone() {
         return defaultFromTimeZone;
     }
 
+    public boolean isAutoFormat() {
+        return autoFormatParser != null;
+    }
+
+    // formats actually used, in the config order. Detected formats come first with auto
+    public List<String> getFormatList() {
+        if (autoFormatParser != null) {
+            return autoFormatParser.getFormatList();
+        }
+        return formatList;
+    }
+
+    // hit counts of formats in the config order
+    public long[] getFormatHitCounts() {
+        if (autoFormatParser != null) {
+            return autoFormatParser.getFormatHitCounts();
+        }
+        return formatHitCounts.clone();
+    }
+
+    // indices of formats in the order to be tried
+    public int[] getFormatOrder() {
+        if (autoFormatParser != null) {
+            int[] order = new int[autoFormatParser.getFormatList().size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+        return formatOrder.clone();
+    }
+
+    public ValueCache<String, ValueCache.Entry<Timestamp>> getCache() {
+        return cache;
+    }
+
+    public void setCache(ValueCache<String, ValueCache.Entry<Timestamp>> cache) {
+        this.cache = cache;
+    }
+
+    public String getLastFormat() {
+        return lastFormat;
+    }
+
+    // counts a value which was parsed with the format before and taken from a cache
+    public void recordCachedHit(String format) {
+        if (format == null) {
+            return;
+        }
+        if (autoFormatParser != null) {
+            autoFormatParser.recordCachedHit(format);
+            return;
+        }
+        int formatIndex = formatList.indexOf(format);
+        if (formatIndex >= 0) {
+            formatHitCounts[formatIndex]++; // conflicts are sampled on parsed values only
+        }
+    }
+
+    public void setFromUnit(TimestampUnit fromUnit) {
+        this.fromUnit = fromUnit;
+    }
+
     public Timestamp parse(String text) throws TimestampParseException, IllegalArgumentException {
-        if (!jrubyParserList.isEmpty()) {
+        if (cache == null) {
+            return parseWithoutCache(text);
+        }
+        ValueCache.Entry<Timestamp> entry = cache.get(text);
+        if (entry != null) {
+            recordCachedHit(entry.getFormat());
+            return entry.getValue();
+        }
+        Timestamp timestamp = parseWithoutCache(text); // invalid text is not cached
+        cache.put(text, new ValueCache.Entry<>(timestamp, lastFormat));
+        return timestamp;
+    }
+
+    private Timestamp parseWithoutCache(String text) throws TimestampParseException, IllegalArgumentException {
+        lastFormat = null;
+        if (fromUnit != null) {
+            Timestamp timestamp = TimestampUnit.toTimestamp(text, fromUnit);
+            if (timestamp != null) {
+                return timestamp;
+            }
+        }
+        if (autoFormatParser != null) {
+            Timestamp timestamp = autoFormatParser.parse(text);
+            lastFormat = autoFormatParser.getLastFormat();
+            return timestamp;
+        } else if (javaTimeParser != null) {
+            return javaTimeParse(text);
+        } else if (!jrubyParserList.isEmpty()) {
             return jrubyParse(text);
         } else if (!javaParserList.isEmpty()) {
             return javaParse(text);
@@ -110,8 +322,16 @@ public class TimestampParser {
         TimestampParseException exception = null;
 
         JRubyTimeParserHelper helper = null;
-        for (JRubyTimeParserHelper h : jrubyParserList) {
-            helper = h;
+        int hit = -1;
+        for (int i : formatOrder) {
+            CompiledTimestampParser compiled = compiledJRubyParserList.get(i);
+            if (compiled != null && compiled.parse(text)) {
+                Timestamp timestamp = Timestamp.ofEpochSecond(compiled.getEpochSecond(), compiled.getNano());
+                recordHit(i, text);
+                return timestamp;
+            }
+            helper = getJRubyHelper(i);
+            hit = i;
             try {
                 localUsec = helper.strptimeUsec(text); // NOTE: micro second resolution
                 break;
@@ -126,54 +346,250 @@ public class TimestampParser {
         String zone = helper.getZone();
 
         if (zone != null) {
-            // TODO cache parsed zone?
-            timeZone = parseDateTimeZone(zone);
-            if (timeZone == null) {
+            Optional<DateTimeZone> cached = zoneCache.get(zone);
+            if (cached == null) {
+                cached = Optional.fromNullable(parseDateTimeZone(zone));
+                zoneCache.put(zone, cached);
+            }
+            if (!cached.isPresent()) {
                 throw new TimestampParseException("Invalid time zone name '" + text + "'");
             }
+            timeZone = cached.get();
+        }
+        if (timeZone != lastTimeZone) {
+            lastTimeZone = timeZone;
+            lastTimeZoneFixed = timeZone.isFixed();
+            lastFixedOffsetMillis = lastTimeZoneFixed ? timeZone.getOffset(0L) : 0;
         }
 
         long localSec = localUsec / 1000000;
         long usec = localUsec % 1000000;
-        long sec = timeZone.convertLocalToUTC(localSec * 1000, false) / 1000;
+        long sec;
+        if (lastTimeZoneFixed) {
+            sec = (localSec * 1000 - lastFixedOffsetMillis) / 1000; // same with convertLocalToUTC of a fixed offset zone
+        }
+        else {
+            sec = timeZone.convertLocalToUTC(localSec * 1000, false) / 1000;
+        }
 
-        return Timestamp.ofEpochSecond(sec, usec * 1000);
+        Timestamp timestamp = Timestamp.ofEpochSecond(sec, usec * 1000);
+        recordHit(hit, text);
+        return timestamp;
+    }
+
+    private JRubyTimeParserHelper getJRubyHelper(int formatIndex) {
+        JRubyTimeParserHelper helper = jrubyParserList.get(formatIndex);
+        if (helper == null) {
+            helper = helperFactory.newHelper(jrubyFormatList.get(formatIndex));
+            jrubyParserList.set(formatIndex, helper);
+        }
+        return helper;
     }
 
     private Timestamp javaParse(String text) throws IllegalArgumentException {
-        long msec = -1;
-        long nsec = -1;
-        Boolean handleNanoResolution = false;
+        // failure of the last tried format, the exception is created only if all formats fail
         IllegalArgumentException exception = null;
+        int errorPosition = 0;
+        boolean nanoOverflow = false;
 
-        for (int i = 0; i < javaParserList.size(); i++) {
-            DateTimeFormatter parser = javaParserList.get(i);
-            handleNanoResolution = handleNanoResolutionList.get(i);
-            try {
-                if (handleNanoResolution) {
-                    nsec = parseNano(text);
+        for (int i : formatOrder) {
+            CompiledTimestampParser compiled = compiledJavaParserList.get(i);
+            if (compiled != null && compiled.parse(text)) {
+                Timestamp timestamp = Timestamp.ofEpochSecond(compiled.getEpochSecond(), compiled.getNano());
+                recordHit(i, text);
+                return timestamp;
+            }
+            boolean handleNanoResolution = handleNanoResolutionList.get(i);
+            long nsec = -1;
+            if (handleNanoResolution) {
+                nsec = parseNano(text);
+                if (nsec == NANO_OVERFLOW) {
+                    exception = null;
+                    nanoOverflow = true;
+                    continue;
                 }
-                DateTime dateTime = parser.parseDateTime(text);
-                msec = dateTime.getMillis(); // NOTE: milli second resolution
-                break;
+            }
+            DateTimeParser parser = javaDateTimeParserList.get(i);
+            if (parser == null) {
+                javaParserList.get(i).parseDateTime(text); // throws UnsupportedOperationException as before
+            }
+            DateTimeParserBucket bucket = javaParserBucketList.get(i);
+            bucket.reset();
+            int position = parser.parseInto(bucket, text, 0);
+            if (position < 0 || position < text.length()) {
+                exception = null;
+                nanoOverflow = false;
+                errorPosition = position < 0 ? ~position : position;
+                continue;
+            }
+            long msec;
+            try {
+                msec = bucket.computeMillis(true, text); // NOTE: milli second resolution
             } catch (IllegalArgumentException ex) {
+                // invalid field values such as February 30, which are rare
                 exception = ex;
+                nanoOverflow = false;
+                continue;
+            }
+
+            Timestamp timestamp;
+            if (handleNanoResolution) {
+                long sec = msec / 1000;
+                timestamp = Timestamp.ofEpochSecond(sec, nsec);
+            }
+            else {
+                long nanoAdjustment = msec * 1000000;
+                timestamp = Timestamp.ofEpochSecond(0, nanoAdjustment);
             }
+            recordHit(i, text);
+            return timestamp;
         }
-        if (msec == -1) {
-            throw exception;
+        if (exception == null && nanoOverflow) {
+            exception = new NumberFormatException(String.format("fraction is too long: \"%s\"", text));
+        }
+        else if (exception == null) {
+            exception = new InvalidFormatException(text, errorPosition);
         }
+        throw exception;
+    }
 
-        if (handleNanoResolution) {
-            long sec = msec / 1000;
-            return Timestamp.ofEpochSecond(sec, nsec);
+    private Timestamp javaTimeParse(String text) throws IllegalArgumentException {
+        for (int i : formatOrder) {
+            Timestamp timestamp = javaTimeParser.parse(i, text);
+            if (timestamp != null) {
+                recordHit(i, text);
+                return timestamp;
+            }
         }
-        else {
-            long nanoAdjustment = msec * 1000000;
-            return Timestamp.ofEpochSecond(0, nanoAdjustment);
+        throw new InvalidFormatException(text, javaTimeParser.getErrorIndex());
+    }
+
+    // same with the exception of DateTimeFormatter.parseDateTime, but without a stack trace and with a lazy message
+    static class InvalidFormatException extends IllegalArgumentException {
+        private final String text;
+        private final int errorPosition;
+
+        InvalidFormatException(String text, int errorPosition) {
+            this.text = text;
+            this.errorPosition = errorPosition;
+        }
+
+        @Override
+        public String getMessage() {
+            return createErrorMessage(text, errorPosition);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    // same with org.joda.time.format.FormatUtils.createErrorMessage
+    private static String createErrorMessage(String text, int errorPosition) {
+        int sampleLength = errorPosition + 32;
+        String sampleText;
+        if (text.length() <= sampleLength + 3) {
+            sampleText = text;
+        } else {
+            sampleText = text.substring(0, sampleLength).concat("...");
+        }
+        if (errorPosition <= 0) {
+            return "Invalid format: \"" + sampleText + '"';
+        }
+        if (errorPosition >= text.length()) {
+            return "Invalid format: \"" + sampleText + "\" is too short";
         }
+        return "Invalid format: \"" + sampleText + "\" is malformed at \"" + sampleText.substring(errorPosition) + '"';
     }
 
+    private void recordHit(int formatIndex, String text) {
+        formatHitCounts[formatIndex]++;
+        lastFormat = formatList.get(formatIndex);
+        if (!adaptiveFormatOrder || formatOrder.length < 2) {
+            return;
+        }
+        hitCount++;
+        if (hitCount % SAMPLE_INTERVAL == 0) {
+            sampleFormatConflicts(text);
+        }
+        if (hitCount % REORDER_INTERVAL == 0) {
+            reorderFormats();
+        }
+    }
+
+    private void sampleFormatConflicts(String text) {
+        boolean[] matched = new boolean[formatOrder.length];
+        for (int i = 0; i < matched.length; i++) {
+            matched[i] = matches(i, text);
+        }
+        for (int i = 0; i < matched.length; i++) {
+            for (int j = 0; j < matched.length; j++) {
+                if (i != j && matched[i] && matched[j]) {
+                    formatConflicts[i][j] = true;
+                }
+            }
+        }
+    }
+
+    private boolean matches(int formatIndex, String text) {
+        if (javaTimeParser != null) {
+            return javaTimeParser.parse(formatIndex, text) != null;
+        } else if (!jrubyParserList.isEmpty()) {
+            CompiledTimestampParser compiled = compiledJRubyParserList.get(formatIndex);
+            if (compiled != null && compiled.parse(text)) {
+                return true;
+            }
+            try {
+                getJRubyHelper(formatIndex).strptimeUsec(text);
+                return true;
+            } catch (TimestampParseException ex) {
+                return false;
+            }
+        } else {
+            CompiledTimestampParser compiled = compiledJavaParserList.get(formatIndex);
+            if (compiled != null && compiled.parse(text)) {
+                return true;
+            }
+            try {
+                javaParserList.get(formatIndex).parseDateTime(text);
+                return true;
+            } catch (IllegalArgumentException ex) {
+                return false;
+            }
+        }
+    }
+
+    // stable greedy reordering: the most frequent format among formats which do not conflict with
+    // remaining formats earlier in the config order goes next
+    private void reorderFormats() {
+        int size = formatOrder.length;
+        int[] newOrder = new int[size];
+        boolean[] placed = new boolean[size];
+        for (int k = 0; k < size; k++) {
+            int next = -1;
+            for (int i = 0; i < size; i++) {
+                if (placed[i] || (next >= 0 && formatHitCounts[i] <= formatHitCounts[next])) {
+                    continue;
+                }
+                boolean eligible = true;
+                for (int j = 0; j < i; j++) {
+                    if (!placed[j] && formatConflicts[i][j]) {
+                        eligible = false;
+                        break;
+                    }
+                }
+                if (eligible) {
+                    next = i;
+                }
+            }
+            placed[next] = true;
+            newOrder[k] = next;
+        }
+        this.formatOrder = newOrder;
+    }
+
+    // @return returns NANO_OVERFLOW if digits are too long to be parsed as long
     private long parseNano(String text) {
         long nsec = -1;
         Matcher m = nanoSecPattern.matcher(text);
@@ -181,6 +597,9 @@ public class TimestampParser {
             //String nanoStr = String.format("%-9s", m.group(1)).replace(" ", "0");
             //nsec = Long.parseLong(nanoStr);
             String nanoStr = m.group(1);
+            if (nanoStr.length() > 19 || (nanoStr.length() == 19 && nanoStr.compareTo("9223372036854775807") > 0)) {
+                return NANO_OVERFLOW;
+            }
             nsec = Long.parseLong(nanoStr) * (long) Math.pow(10, 9 - nanoStr.length());
         }
         return nsec;
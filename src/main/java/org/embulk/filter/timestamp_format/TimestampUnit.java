@@ -65,6 +65,84 @@ public enum TimestampUnit {
         return Timestamp.ofEpochSecond(0, nanoAdjustment);
     }
 
+    // parses a decimal string such as "1463065359" or "-1463065359.123" without going through double, so that
+    // digits of the fraction are kept up to nano seconds. Further digits are truncated
+    // @return null if the value is not a decimal string
+    public static Timestamp toTimestamp(String value, TimestampUnit fromUnit)
+    {
+        int length = value.length();
+        boolean negative = length > 0 && value.charAt(0) == '-';
+        int pos = negative ? 1 : 0;
+        int start = pos;
+        long integerPart = 0;
+        while (pos < length && isDigit(value.charAt(pos))) {
+            int digit = value.charAt(pos++) - '0';
+            if (integerPart > (Long.MAX_VALUE - digit) / 10) {
+                return null; // overflow
+            }
+            integerPart = integerPart * 10 + digit;
+        }
+        if (pos == start) {
+            return null;
+        }
+        long fractionNano = 0; // fraction of a unit in nano
+        if (pos < length && value.charAt(pos) == '.') {
+            int fractionStart = ++pos;
+            while (pos < length && isDigit(value.charAt(pos))) {
+                if (pos - fractionStart < 9) {
+                    fractionNano = fractionNano * 10 + (value.charAt(pos) - '0');
+                }
+                pos++;
+            }
+            if (pos == fractionStart) {
+                return null;
+            }
+            fractionNano *= CompiledTimestampParser.POW10[Math.max(0, 9 - (pos - fractionStart))];
+        }
+        if (pos != length) {
+            return null;
+        }
+        long epochSecond = integerPart / fromUnit.scale();
+        long nanoAdjustment = (integerPart % fromUnit.scale()) * fromUnit.scaleToNano() + fractionNano * fromUnit.scaleToNano() / 1000000000L;
+        return negative ? Timestamp.ofEpochSecond(-epochSecond, -nanoAdjustment) : Timestamp.ofEpochSecond(epochSecond, nanoAdjustment);
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    // epoch second and nano of second of toTimestamp(value, fromUnit), without allocating a Timestamp
+    public static long toEpochSecond(long value, TimestampUnit fromUnit)
+    {
+        return floorDiv(value * fromUnit.scaleToNano(), 1000000000L);
+    }
+
+    public static int toNano(long value, TimestampUnit fromUnit)
+    {
+        long nanoAdjustment = value * fromUnit.scaleToNano();
+        return (int) (nanoAdjustment - floorDiv(nanoAdjustment, 1000000000L) * 1000000000L);
+    }
+
+    public static long toEpochSecond(double value, TimestampUnit fromUnit)
+    {
+        return toEpochSecond((long) (value * fromUnit.scaleToNano()), NanoSecond);
+    }
+
+    public static int toNano(double value, TimestampUnit fromUnit)
+    {
+        return toNano((long) (value * fromUnit.scaleToNano()), NanoSecond);
+    }
+
+    private static long floorDiv(long x, long y)
+    {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
     public static long toLong(Timestamp value, TimestampUnit toUnit)
     {
         long epochSecond = value.getEpochSecond() * toUnit.scale();
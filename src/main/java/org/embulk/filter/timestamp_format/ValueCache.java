@@ -0,0 +1,166 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.config.ConfigException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded cache of converted values of a column. Not thread-safe.
+public abstract class ValueCache<K, V>
+{
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    public static <K, V> ValueCache<K, V> create(String policy, int size)
+    {
+        if (policy.equals("lru")) {
+            return new Lru<>(size);
+        }
+        else if (policy.equals("clock")) {
+            return new Clock<>(size);
+        }
+        throw new ConfigException(String.format("cache_policy must be lru or clock: \"%s\"", policy));
+    }
+
+    // @return null if not cached
+    public V get(K key)
+    {
+        V value = lookup(key);
+        if (value == null) {
+            missCount++;
+        }
+        else {
+            hitCount++;
+        }
+        return value;
+    }
+
+    public abstract void put(K key, V value);
+
+    protected abstract V lookup(K key);
+
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    // converted value and the format which parsed it, so that hit counts of formats include cached values
+    public static final class Entry<V>
+    {
+        private final V value;
+        private final String format; // null if parsed by from_unit
+
+        public Entry(V value, String format)
+        {
+            this.value = value;
+            this.format = format;
+        }
+
+        public V getValue()
+        {
+            return value;
+        }
+
+        public String getFormat()
+        {
+            return format;
+        }
+    }
+
+    // evicts the least recently used entry
+    public static class Lru<K, V> extends ValueCache<K, V>
+    {
+        private final Map<K, V> map;
+
+        public Lru(final int size)
+        {
+            this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+                {
+                    return size() > size;
+                }
+            };
+        }
+
+        @Override
+        protected V lookup(K key)
+        {
+            return map.get(key);
+        }
+
+        @Override
+        public void put(K key, V value)
+        {
+            map.put(key, value);
+        }
+    }
+
+    // evicts an entry which is not referenced since the clock hand passed last time.
+    // A hit only sets a flag, which is cheaper than reordering entries of LRU
+    public static class Clock<K, V> extends ValueCache<K, V>
+    {
+        private final Object[] keys;
+        private final Object[] values;
+        private final boolean[] referenced;
+        private final HashMap<K, Integer> indexMap = new HashMap<>();
+        private int count = 0;
+        private int hand = 0;
+
+        public Clock(int size)
+        {
+            this.keys = new Object[size];
+            this.values = new Object[size];
+            this.referenced = new boolean[size];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected V lookup(K key)
+        {
+            Integer index = indexMap.get(key);
+            if (index == null) {
+                return null;
+            }
+            referenced[index] = true;
+            return (V) values[index];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void put(K key, V value)
+        {
+            if (keys.length == 0) {
+                return;
+            }
+            Integer index = indexMap.get(key);
+            if (index != null) {
+                values[index] = value;
+                return;
+            }
+            int slot;
+            if (count < keys.length) {
+                slot = count++;
+            }
+            else {
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % keys.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % keys.length;
+                indexMap.remove((K) keys[slot]);
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            referenced[slot] = false;
+            indexMap.put(key, slot);
+        }
+    }
+}
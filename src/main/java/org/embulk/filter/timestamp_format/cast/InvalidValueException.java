@@ -0,0 +1,30 @@
+package org.embulk.filter.timestamp_format.cast;
+
+import org.embulk.spi.DataException;
+
+// DataException of an invalid input value. It has no stack trace and its message is built only when required,
+// because invalid values can be as many as valid values with stop_on_invalid_record: false
+public class InvalidValueException extends DataException
+{
+    private final String format;
+    private final Object value;
+
+    public InvalidValueException(String format, Object value, Throwable cause)
+    {
+        super((String) null, cause);
+        this.format = format;
+        this.value = value;
+    }
+
+    @Override
+    public String getMessage()
+    {
+        return String.format(format, value);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace()
+    {
+        return this;
+    }
+}
@@ -11,8 +11,9 @@ public class LongCast
 
     public static String asString(long value, TimestampUnit fromUnit, TimestampFormatter formatter) throws DataException
     {
-        Timestamp timestamp = TimestampUnit.toTimestamp(value, fromUnit);
-        return formatter.format(timestamp);
+        long epochSecond = TimestampUnit.toEpochSecond(value, fromUnit);
+        int nano = TimestampUnit.toNano(value, fromUnit);
+        return formatter.format(epochSecond, nano);
     }
 
     public static Timestamp asTimestamp(long value, TimestampUnit fromUnit) throws DataException
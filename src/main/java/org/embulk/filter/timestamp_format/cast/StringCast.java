@@ -11,10 +11,7 @@ public class StringCast
 {
     private StringCast() {}
 
-    private static String buildErrorMessage(String value)
-    {
-        return String.format("failed to parse string: \"%s\"", value);
-    }
+    private static final String ERROR_MESSAGE_FORMAT = "failed to parse string: \"%s\"";
 
     public static String asString(String value, TimestampParser parser, TimestampFormatter formatter) throws DataException
     {
@@ -23,10 +20,10 @@ public class StringCast
             return formatter.format(timestamp);
         }
         catch (TimestampParseException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
         catch (IllegalArgumentException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
     }
 
@@ -36,10 +33,10 @@ public class StringCast
             return parser.parse(value);
         }
         catch (TimestampParseException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
         catch (IllegalArgumentException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
     }
 
@@ -50,10 +47,10 @@ public class StringCast
             return TimestampUnit.toLong(timestamp, toUnit);
         }
         catch (TimestampParseException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
         catch (IllegalArgumentException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
     }
 
@@ -64,10 +61,10 @@ public class StringCast
             return TimestampUnit.toDouble(timestamp, toUnit);
         }
         catch (TimestampParseException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
         catch (IllegalArgumentException ex) {
-            throw new DataException(buildErrorMessage(value), ex);
+            throw new InvalidValueException(ERROR_MESSAGE_FORMAT, value, ex);
         }
     }
 }
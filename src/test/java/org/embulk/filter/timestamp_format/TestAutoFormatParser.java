@@ -0,0 +1,73 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.time.TimestampParseException;
+import org.joda.time.DateTimeZone;
+import org.jruby.embed.ScriptingContainer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestAutoFormatParser
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testDetect()
+    {
+        assertEquals("%Y-%m-%d", AutoFormatParser.detect("2016-05-13"));
+        assertEquals("%Y/%m/%d %H:%M:%S", AutoFormatParser.detect("2016/05/13 18:02:39"));
+        assertEquals("%Y-%m-%dT%H:%M:%S.%3N%:z", AutoFormatParser.detect("2016-05-13T18:02:39.123+09:00"));
+        assertEquals("%Y-%m-%d %H:%M:%S,%6N %z", AutoFormatParser.detect("2016-05-13 18:02:39,123456 +0900"));
+        assertEquals("%Y-%m-%dT%H:%M:%S%z", AutoFormatParser.detect("2016-05-13T18:02:39Z"));
+        assertEquals("%Y%m%dT%H%M%S", AutoFormatParser.detect("20160513T180239"));
+        assertEquals("%Y%m%d", AutoFormatParser.detect("20160513"));
+        assertEquals("%s", AutoFormatParser.detect("1463130159"));
+        assertEquals("%Q", AutoFormatParser.detect("1463130159123"));
+        assertNull(AutoFormatParser.detect("2016-05/13"));
+        assertNull(AutoFormatParser.detect("13/May/2016:18:02:39 +0900"));
+        assertNull(AutoFormatParser.detect("2016-05-13 18:02:39 JST"));
+    }
+
+    @Test
+    public void testParse()
+    {
+        JRubyHelperFactory helperFactory = new JRubyHelperFactory(new ScriptingContainer());
+        TimestampParser fallbackParser = new TimestampParser(helperFactory, Arrays.asList("%Y-%m-%d %H"), DateTimeZone.UTC, false);
+        TimestampParser parser = TimestampParser.ofAutoFormat(new AutoFormatParser(helperFactory, DateTimeZone.UTC, fallbackParser), DateTimeZone.UTC);
+        Timestamp expected = Timestamp.ofEpochSecond(1463130159, 123000000);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(expected, parser.parse("2016-05-13 18:02:39.123 +09:00"));
+        }
+        assertEquals(Timestamp.ofEpochSecond(1463162400, 0), parser.parse("2016-05-13 18"));
+        try {
+            parser.parse("foo");
+            fail();
+        }
+        catch (IllegalArgumentException | TimestampParseException ex) {
+        }
+        assertEquals(Arrays.asList("%Y-%m-%d %H:%M:%S.%3N %:z", "%Y-%m-%d %H"), parser.getFormatList());
+        assertEquals(200L, parser.getFormatHitCounts()[0]);
+    }
+
+    @Test
+    public void testParseIsoOffsetWithoutJRuby()
+    {
+        // the detected format of ...Z values is compiled, so the scripting container is never touched
+        JRubyHelperFactory helperFactory = new JRubyHelperFactory(null);
+        TimestampParser parser = TimestampParser.ofAutoFormat(new AutoFormatParser(helperFactory, DateTimeZone.UTC, null), DateTimeZone.UTC);
+        Timestamp expected = Timestamp.ofEpochSecond(1463162559, 0);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(expected, parser.parse("2016-05-13T18:02:39Z"));
+        }
+        assertEquals(Arrays.asList("%Y-%m-%dT%H:%M:%S%z"), parser.getFormatList());
+        assertEquals(200L, parser.getFormatHitCounts()[0]);
+    }
+}
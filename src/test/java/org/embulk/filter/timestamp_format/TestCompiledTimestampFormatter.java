@@ -0,0 +1,96 @@
+package org.embulk.filter.timestamp_format;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.jruby.util.RubyDateFormat;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestCompiledTimestampFormatter
+{
+    private static String format(String format, String zone, long epochSecond, int nano)
+    {
+        CompiledTimestampFormatter formatter = CompiledTimestampFormatter.compile(format, DateTimeZone.forID(zone));
+        StringBuilder buffer = new StringBuilder();
+        formatter.format(epochSecond, nano, buffer);
+        return buffer.toString();
+    }
+
+    @Test
+    public void testCompile()
+    {
+        assertNotNull(CompiledTimestampFormatter.compile("%Y-%m-%d %H:%M:%S.%6N %z", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampFormatter.compile("%a, %d %b %Y %T %:z", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampFormatter.compile("%-m/%-d/%y %l:%M %p", DateTimeZone.UTC));
+        assertNull(CompiledTimestampFormatter.compile("%c", DateTimeZone.UTC));
+        assertNull(CompiledTimestampFormatter.compile("%#b", DateTimeZone.UTC));
+        assertNull(CompiledTimestampFormatter.compile("%Ey", DateTimeZone.UTC));
+        assertNull(CompiledTimestampFormatter.compile("%Y-%m-%d %", DateTimeZone.UTC));
+    }
+
+    @Test
+    public void testFormat()
+    {
+        long epochSecond = 1463065359L; // 2016-05-12 15:02:39 UTC, Thursday
+        int nano = 123456789;
+        assertEquals("2016-05-13 00:02:39.123456 +0900", format("%Y-%m-%d %H:%M:%S.%6N %z", "Asia/Tokyo", epochSecond, nano));
+        assertEquals("2016-05-12 08:02:39.123 -07:00", format("%F %T.%L %:z", "America/Los_Angeles", epochSecond, nano));
+        assertEquals("123456789 1463065359", format("%N %s", "UTC", epochSecond, nano));
+        assertEquals("Thu Thursday May May 133 4 4", format("%a %A %b %B %j %u %w", "UTC", epochSecond, nano));
+        assertEquals("THU MAY UTC JST", format("%^a %^b %Z", "UTC", epochSecond, nano) + " " + format("%Z", "Asia/Tokyo", epochSecond, nano));
+        assertEquals("5/12/16  3:02 PM pm", format("%-m/%-d/%y %l:%M %p %P", "UTC", epochSecond, nano));
+        assertEquals(" 5 005   12 %\t", format("%_m %3m %4e %%%t", "UTC", epochSecond, nano));
+        assertEquals("1969-12-31 23:59:59 -1", format("%F %T %s", "UTC", -1L, 0));
+    }
+
+    @Test
+    public void testFormatOutOfRange()
+    {
+        CompiledTimestampFormatter formatter = CompiledTimestampFormatter.compile("%Y-%m-%d", DateTimeZone.UTC);
+        assertFalse(formatter.format(-62135596801L, 0, new StringBuilder())); // 0000-12-31 23:59:59
+        assertFalse(formatter.format(253402300800L, 0, new StringBuilder())); // 10000-01-01 00:00:00
+
+        // Local Mean Time has an offset with seconds
+        CompiledTimestampFormatter lmt = CompiledTimestampFormatter.compile("%z", DateTimeZone.forID("Asia/Tokyo"));
+        assertFalse(lmt.format(-3000000000L, 0, new StringBuilder()));
+    }
+
+    @Test
+    public void testSameWithRubyDateFormat()
+    {
+        String[] formats = {
+            "%Y-%m-%d %H:%M:%S.%6N %z",
+            "%Y-%m-%d %H:%M:%S.%N %:z %::z",
+            "%FT%T.%L%z %Z",
+            "%a %A %b %B %h %j %u %w %s",
+            "%^a %^B %-d %-m %_H %e %k %l %I %p %P %y",
+            "%10A|%-10A|%3N|%3d|%_5Y|%D %R %r",
+        };
+        String[] zones = {"UTC", "Asia/Tokyo", "America/Los_Angeles", "Asia/Kolkata"};
+        long[] epochSeconds = {
+            0L, -1L, 951782400L, 1457859600L, 1463065359L, 1478422800L, 1483228799L, 4102444800L, -631152000L,
+        };
+        for (String format : formats) {
+            for (String zone : zones) {
+                DateTimeZone timeZone = DateTimeZone.forID(zone);
+                CompiledTimestampFormatter formatter = CompiledTimestampFormatter.compile(format, timeZone);
+                RubyDateFormat rubyDateFormat = new RubyDateFormat(format, Locale.ENGLISH, true);
+                for (long epochSecond : epochSeconds) {
+                    for (int nano : new int[] {0, 1000, 123456789, 999999999}) {
+                        rubyDateFormat.setDateTime(new DateTime(epochSecond * 1000, timeZone));
+                        rubyDateFormat.setNSec(nano);
+                        StringBuilder buffer = new StringBuilder();
+                        formatter.format(epochSecond, nano, buffer);
+                        assertEquals(format + " " + zone + " " + epochSecond, rubyDateFormat.format(null), buffer.toString());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.embulk.filter.timestamp_format;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompiledTimestampParser
+{
+    @Test
+    public void testCompileRubyFormat()
+    {
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H:%M:%S.%N %z", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H:%M:%S.%6N %:z", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%FT%T", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%Y-%m-%d", DateTimeZone.UTC));
+        assertNull(CompiledTimestampParser.compileRubyFormat("%H:%M:%S", DateTimeZone.UTC)); // no date
+        assertNull(CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %Z", DateTimeZone.UTC));
+        assertNull(CompiledTimestampParser.compileRubyFormat("%b %e %Y", DateTimeZone.UTC));
+        assertNull(CompiledTimestampParser.compileRubyFormat("%-m/%-d/%Y", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%Y-%m-%e %k:%M:%S %::z", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%Y/%m/%d %l:%M:%S %p%%%n", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%s.%3N", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileRubyFormat("%Q", DateTimeZone.UTC));
+        assertNull(CompiledTimestampParser.compileRubyFormat("%s %z", DateTimeZone.UTC)); // JRuby ignores %z with %s
+        assertNull(CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H %I", DateTimeZone.UTC));
+    }
+
+    @Test
+    public void testCompileJavaFormat()
+    {
+        assertNotNull(CompiledTimestampParser.compileJavaFormat("yyyy-MM-dd HH:mm:ss.SSS Z", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileJavaFormat("yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnnZZ", DateTimeZone.UTC));
+        assertNotNull(CompiledTimestampParser.compileJavaFormat("yyyyMMdd", DateTimeZone.UTC));
+        assertNull(CompiledTimestampParser.compileJavaFormat("yyyy-MM-dd HH:mm:ss z", DateTimeZone.UTC));
+        assertNull(CompiledTimestampParser.compileJavaFormat("dd-MMM-yyyy", DateTimeZone.UTC));
+        assertNull(CompiledTimestampParser.compileJavaFormat("yyyy.MM.dd HH:mm:ss.nnnnnnnnn", DateTimeZone.UTC));
+    }
+
+    @Test
+    public void testParseRubyFormat()
+    {
+        CompiledTimestampParser parser = CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H:%M:%S.%N %z", DateTimeZone.UTC);
+
+        assertTrue(parser.parse("2016-05-12 20:14:13.123456789 +0900"));
+        assertEquals(1463051653L, parser.getEpochSecond());
+        assertEquals(123456000, parser.getNano()); // micro second resolution as JRuby parser
+
+        assertTrue(parser.parse("2016-05-12 20:14:13.1 +09:00"));
+        assertEquals(1463051653L, parser.getEpochSecond());
+        assertEquals(100000000, parser.getNano());
+
+        assertTrue(parser.parse("2016-05-12 20:14:13.1 UTC"));
+        assertEquals(1463084053L, parser.getEpochSecond());
+
+        assertTrue(parser.parse("2016-05-12 20:14:13.1 Z"));
+        assertEquals(1463084053L, parser.getEpochSecond());
+
+        assertFalse(parser.parse("2016-5-12 20:14:13.1 +0900"));
+        assertFalse(parser.parse("2016-05-12 20:14:13 +0900"));
+        assertFalse(parser.parse("2016-05-12 20:14:13.1234567890 +0900"));
+        assertFalse(parser.parse("2016-05-12 20:14:60.1 +0900"));
+        assertFalse(parser.parse("2016-02-30 20:14:13.1 +0900"));
+        assertFalse(parser.parse("2016-05-12 20:14:13.1 JST"));
+        assertFalse(parser.parse("2016-05-12 20:14:13.1 Zulu"));
+        assertFalse(parser.parse("2016-05-12 20:14:13.1 +0900 "));
+    }
+
+    @Test
+    public void testParseRubyFormatWithSpacePaddingAndMeridian()
+    {
+        CompiledTimestampParser parser = CompiledTimestampParser.compileRubyFormat("%Y-%m-%e %k:%M:%S %::z", DateTimeZone.UTC);
+
+        assertTrue(parser.parse("2016-05- 2  9:14:13 +09:00:00"));
+        assertEquals(1462148053L, parser.getEpochSecond());
+        assertTrue(parser.parse("2016-05-02 09:14:13 -00:00:30"));
+        assertEquals(1462180483L, parser.getEpochSecond());
+        assertFalse(parser.parse("2016-05-2 9:14:13 +09:00"));
+
+        parser = CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %l:%M:%S %p", DateTimeZone.UTC);
+        assertTrue(parser.parse("2016-05-02  9:14:13 PM"));
+        assertEquals(1462223653L, parser.getEpochSecond());
+        assertTrue(parser.parse("2016-05-02 12:14:13 am"));
+        assertEquals(1462148053L, parser.getEpochSecond());
+        assertFalse(parser.parse("2016-05-02 13:14:13 PM"));
+        assertFalse(parser.parse("2016-05-02 09:14:13 p.m."));
+    }
+
+    @Test
+    public void testParseRubyFormatWithEpoch()
+    {
+        CompiledTimestampParser parser = CompiledTimestampParser.compileRubyFormat("%s", DateTimeZone.UTC);
+        assertTrue(parser.parse("1463051653"));
+        assertEquals(1463051653L, parser.getEpochSecond());
+        assertEquals(0, parser.getNano());
+        assertFalse(parser.parse("-1463051653"));
+        assertFalse(parser.parse("1463051653000000"));
+
+        parser = CompiledTimestampParser.compileRubyFormat("%s.%N", DateTimeZone.UTC);
+        assertTrue(parser.parse("1463051653.123456789"));
+        assertEquals(1463051653L, parser.getEpochSecond());
+        assertEquals(123456000, parser.getNano());
+
+        parser = CompiledTimestampParser.compileRubyFormat("%Q", DateTimeZone.UTC);
+        assertTrue(parser.parse("1463051653123"));
+        assertEquals(1463051653L, parser.getEpochSecond());
+        assertEquals(123000000, parser.getNano());
+
+        // same with the JRuby parser, which takes epoch seconds as a local time of default_from_timezone
+        parser = CompiledTimestampParser.compileRubyFormat("%s", DateTimeZone.forID("Asia/Tokyo"));
+        assertTrue(parser.parse("1463051653"));
+        assertEquals(1463051653L - 9 * 3600, parser.getEpochSecond());
+    }
+
+    @Test
+    public void testParseRubyFormatWithDefaultTimeZone()
+    {
+        CompiledTimestampParser parser = CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H:%M:%S", DateTimeZone.forID("Asia/Tokyo"));
+
+        assertTrue(parser.parse("2016-05-12 20:14:13"));
+        assertEquals(1463051653L, parser.getEpochSecond());
+        assertEquals(0, parser.getNano());
+    }
+
+    @Test
+    public void testParseJavaFormat()
+    {
+        String[][] cases = {
+            {"yyyy-MM-dd HH:mm:ss.SSS Z", "2016-05-12 20:14:13.123 +0900"},
+            {"yyyy-MM-dd HH:mm:ss.SSS Z", "2016-05-12 20:14:13.1 +09:00"},
+            {"yyyy-MM-dd HH:mm:ss.SSSSSS Z", "2016-05-12 20:14:13.123456 -0130"},
+            {"yyyy-MM-dd HH:mm:ss", "2016-02-29 00:00:00"},
+            {"yyyy-MM-dd HH:mm:ss", "1969-12-31 23:59:59"},
+            {"yyyy-MM-dd'T'HH:mm:ss", "2016-05-12T20:14:13"},
+            {"yyyyMMdd", "20160512"},
+        };
+        for (String zone : new String[] {"UTC", "Asia/Tokyo", "America/Los_Angeles"}) {
+            DateTimeZone timeZone = DateTimeZone.forID(zone);
+            for (String[] c : cases) {
+                CompiledTimestampParser parser = CompiledTimestampParser.compileJavaFormat(c[0], timeZone);
+                long expected = DateTimeFormat.forPattern(c[0]).withLocale(Locale.ENGLISH).withZone(timeZone).parseMillis(c[1]);
+                assertTrue(c[1], parser.parse(c[1]));
+                assertEquals(c[1], expected, parser.getEpochSecond() * 1000 + parser.getNano() / 1000000);
+            }
+        }
+    }
+
+    @Test
+    public void testParseJavaFormatWithTooManyFractionDigits()
+    {
+        // Joda-Time reads at most 3 digits for SSS
+        CompiledTimestampParser parser = CompiledTimestampParser.compileJavaFormat("yyyy-MM-dd HH:mm:ss.SSS Z", DateTimeZone.UTC);
+        assertFalse(parser.parse("2016-05-12 20:14:13.123456 +0900"));
+    }
+
+    @Test
+    public void testParseJavaFormatWithNano()
+    {
+        CompiledTimestampParser parser = CompiledTimestampParser.compileJavaFormat("yyyy-MM-dd HH:mm:ss.nnnnnnnnn Z", DateTimeZone.UTC);
+
+        assertTrue(parser.parse("2016-05-12 20:14:13.123456789 +0900"));
+        assertEquals(1463051653L, parser.getEpochSecond());
+        assertEquals(123456789, parser.getNano());
+
+        assertTrue(parser.parse("2016-05-12 20:14:13.1 +0900"));
+        assertEquals(100000000, parser.getNano());
+    }
+
+    @Test
+    public void testParseJavaFormatInTimeZoneGap()
+    {
+        // 2016-03-13 02:30:00 does not exist in America/Los_Angeles, Joda-Time throws
+        CompiledTimestampParser parser = CompiledTimestampParser.compileJavaFormat("yyyy-MM-dd HH:mm:ss", DateTimeZone.forID("America/Los_Angeles"));
+        assertFalse(parser.parse("2016-03-13 02:30:00"));
+    }
+
+    @Test
+    public void testParseWithCachedDatePrefix()
+    {
+        CompiledTimestampParser parser = CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H:%M:%S", DateTimeZone.UTC);
+
+        assertTrue(parser.parse("2016-05-12 20:14:13"));
+        assertTrue(parser.parse("2016-05-12 23:59:59"));
+        assertEquals(1463097599L, parser.getEpochSecond());
+        assertFalse(parser.parse("2016-05-12 24:00:00"));
+        assertFalse(parser.parse("2016-05-12"));
+        assertTrue(parser.parse("2016-05-13 00:00:00"));
+        assertEquals(1463097600L, parser.getEpochSecond());
+        assertFalse(parser.parse("2016-02-30 00:00:00"));
+        assertTrue(parser.parse("2016-05-13 00:00:01"));
+        assertEquals(1463097601L, parser.getEpochSecond());
+    }
+
+    @Test
+    public void testParseIsSameWithoutCache()
+    {
+        String[] formats = {"yyyy-MM-dd HH:mm:ss", "HH:mm:ss dd/MM/yyyy"};
+        for (String format : formats) {
+            for (String zone : new String[] {"America/Los_Angeles", "Europe/London", "Asia/Tokyo"}) {
+                DateTimeZone timeZone = DateTimeZone.forID(zone);
+                DateTimeFormatter joda = DateTimeFormat.forPattern(format).withLocale(Locale.ENGLISH).withZone(DateTimeZone.UTC);
+                CompiledTimestampParser cached = CompiledTimestampParser.compileJavaFormat(format, timeZone);
+                CompiledTimestampParser cachedJRuby = CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H:%M:%S", timeZone);
+                Random random = new Random(0);
+                long localMillis = 1457740800000L; // 2016-03-12 00:00:00 local
+                for (int i = 0; i < 5000; i++) {
+                    localMillis += (random.nextInt(5) == 0 ? random.nextInt(2 * 86400) - 86400 : random.nextInt(120)) * 1000L;
+                    String text = joda.print(localMillis);
+                    CompiledTimestampParser fresh = CompiledTimestampParser.compileJavaFormat(format, timeZone);
+                    assertEquals(text, fresh.parse(text), cached.parse(text));
+                    if (fresh.parse(text)) {
+                        assertEquals(text, fresh.getEpochSecond(), cached.getEpochSecond());
+                    }
+
+                    String rubyText = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss").withZone(DateTimeZone.UTC).print(localMillis);
+                    CompiledTimestampParser freshJRuby = CompiledTimestampParser.compileRubyFormat("%Y-%m-%d %H:%M:%S", timeZone);
+                    assertTrue(freshJRuby.parse(rubyText));
+                    assertTrue(cachedJRuby.parse(rubyText));
+                    assertEquals(rubyText, freshJRuby.getEpochSecond(), cachedJRuby.getEpochSecond());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDaysFromCivil()
+    {
+        assertEquals(0L, CompiledTimestampParser.daysFromCivil(1970, 1, 1));
+        assertEquals(-1L, CompiledTimestampParser.daysFromCivil(1969, 12, 31));
+        assertEquals(16868L, CompiledTimestampParser.daysFromCivil(2016, 3, 8));
+        assertEquals(-719528L, CompiledTimestampParser.daysFromCivil(0, 1, 1));
+    }
+}
@@ -0,0 +1,31 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.EmbulkTestRuntime;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestConversionMetrics
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static ConversionMetrics newMetrics(long valueCount, long nullCount)
+    {
+        ColumnMetrics columnMetrics = new ColumnMetrics(new InvalidValueHandler("timestamp", false, -1, 0));
+        columnMetrics.valueCount = valueCount;
+        columnMetrics.nullCount = nullCount;
+        ConversionMetrics metrics = new ConversionMetrics();
+        metrics.addColumn(columnMetrics);
+        return metrics;
+    }
+
+    @Test
+    public void testMerge()
+    {
+        ConversionMetrics metrics = newMetrics(10, 1).merge(newMetrics(20, 2));
+        assertEquals("{\"columns\":{\"timestamp\":{\"values\":30,\"nulls\":3,\"invalids\":0,\"nanos\":0}},\"formats\":{}}",
+                metrics.toJson());
+    }
+}
@@ -0,0 +1,49 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.filter.timestamp_format.cast.InvalidValueException;
+import org.embulk.spi.DataException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestInvalidValueHandler
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testHandle()
+    {
+        InvalidValueHandler handler = new InvalidValueHandler("column", false, 2, 60000L);
+        for (int i = 0; i < 5; i++) {
+            handler.handle(new InvalidValueException("failed to parse string: \"%s\"", "foo" + i, null));
+        }
+        assertEquals(5, handler.getInvalidCount());
+        handler.finish();
+    }
+
+    @Test
+    public void testHandleWithoutLogs()
+    {
+        // the limit is reached at the first invalid value, and a summary is logged after an interval
+        InvalidValueHandler handler = new InvalidValueHandler("column", false, 0, 60000L);
+        long startedAt = System.currentTimeMillis();
+        handler.handle(new InvalidValueException("failed to parse string: \"%s\"", "foo", null));
+        assertTrue(handler.getNextSummaryMillis() >= startedAt + 60000L);
+        long nextSummaryMillis = handler.getNextSummaryMillis();
+        handler.handle(new InvalidValueException("failed to parse string: \"%s\"", "bar", null));
+        assertEquals(nextSummaryMillis, handler.getNextSummaryMillis());
+        assertEquals(2, handler.getInvalidCount());
+    }
+
+    @Test
+    public void testInvalidValueException()
+    {
+        DataException ex = new InvalidValueException("failed to parse string: \"%s\"", "foo", null);
+        assertEquals("failed to parse string: \"foo\"", ex.getMessage());
+        assertEquals(0, ex.getStackTrace().length);
+    }
+}
@@ -0,0 +1,54 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+import org.jruby.embed.ScriptingContainer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestJRubyHelperFactory
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testJavaFormatsWithoutJRuby()
+    {
+        // a parser of java formats never touches the scripting container
+        JRubyHelperFactory helperFactory = new JRubyHelperFactory(null);
+        TimestampParser parser = new TimestampParser(helperFactory, Arrays.asList("yyyy-MM-dd", "yyyyMMdd"), DateTimeZone.UTC, false);
+        assertEquals(Timestamp.ofEpochSecond(1462060800L, 0), parser.parse("2016-05-01"));
+    }
+
+    @Test
+    public void testFactoryIsShared()
+    {
+        final int[] evaluatedCount = {0};
+        ScriptingContainer jruby = new ScriptingContainer() {
+            @Override
+            public Object runScriptlet(String script)
+            {
+                evaluatedCount[0]++;
+                return super.runScriptlet(script);
+            }
+        };
+        JRubyHelperFactory helperFactory = new JRubyHelperFactory(jruby);
+        new TimestampParser(helperFactory, Arrays.asList("yyyy-MM-dd"), DateTimeZone.UTC, false);
+        assertEquals(0, evaluatedCount[0]);
+        // compilable ruby formats create helpers on the first value the compiled parser misses
+        TimestampParser parser = new TimestampParser(helperFactory, Arrays.asList("%Y-%m-%d", "%Y/%m/%d"), DateTimeZone.UTC, false);
+        new TimestampParser(helperFactory, Arrays.asList("%Y-%m-%d %H:%M:%S.%N %z"), DateTimeZone.UTC, false);
+        assertEquals(Timestamp.ofEpochSecond(1462060800L, 0), parser.parse("2016-05-01"));
+        assertEquals(0, evaluatedCount[0]);
+        assertEquals(Timestamp.ofEpochSecond(1462060800L, 0), parser.parse("2016/05/01"));
+        assertEquals(1, evaluatedCount[0]);
+        new TimestampParser(helperFactory, Arrays.asList("%d/%b/%Y"), DateTimeZone.UTC, false);
+        new TimestampParser(helperFactory, Arrays.asList("%Y%m%d"), DateTimeZone.UTC, false);
+        assertEquals(1, evaluatedCount[0]);
+    }
+}
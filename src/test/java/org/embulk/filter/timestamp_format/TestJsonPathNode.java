@@ -0,0 +1,43 @@
+package org.embulk.filter.timestamp_format;
+
+import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
+import io.github.medjed.jsonpathcompiler.expressions.path.PathToken;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.filter.timestamp_format.TimestampFormatFilterPlugin.ColumnConfig;
+import org.embulk.spi.Exec;
+import org.msgpack.value.ValueFactory;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestJsonPathNode
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static ColumnConfig add(JsonPathNode root, String path)
+    {
+        ColumnConfig columnConfig = Exec.newConfigSource().set("name", path).loadConfig(ColumnConfig.class);
+        PathToken columnToken = PathCompiler.compile(path).getRoot().next();
+        root.add(columnToken.isLeaf() ? null : columnToken.next(), columnConfig);
+        return columnConfig;
+    }
+
+    @Test
+    public void testAdd()
+    {
+        JsonPathNode root = new JsonPathNode();
+        ColumnConfig index = add(root, "$.json.foo[0].bar");
+        ColumnConfig wildcard = add(root, "$.json.foo[*].bar");
+        ColumnConfig property = add(root, "$['json']['baz']");
+
+        JsonPathNode foo = root.getPropertyChild(ValueFactory.newString("foo"));
+        assertSame(index, foo.getIndexChild(0).getPropertyChild(ValueFactory.newString("bar")).getColumnConfig());
+        assertSame(wildcard, foo.getIndexChild(1).getPropertyChild(ValueFactory.newString("bar")).getColumnConfig());
+        assertSame(property, root.getPropertyChild(ValueFactory.newString("baz")).getColumnConfig());
+        assertNull(foo.getColumnConfig());
+        assertNull(root.getPropertyChild(ValueFactory.newString("qux")));
+    }
+}
@@ -0,0 +1,164 @@
+package org.embulk.filter.timestamp_format;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.filter.timestamp_format.cast.InvalidValueException;
+import org.embulk.spi.Column;
+import org.embulk.spi.DataException;
+import org.embulk.spi.Exec;
+import org.embulk.spi.FilterPlugin;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageTestUtils;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.spi.util.Pages;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestParallelPageOutput
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final int PAGE_COUNT = 5;
+    private static final int RECORDS_PER_PAGE = 100;
+
+    private final Schema inputSchema = new Schema(ImmutableList.of(
+            new Column(0, "timestamp", Types.STRING),
+            new Column(1, "id", Types.LONG)));
+
+    private ConfigSource newConfig(int parallelism)
+    {
+        return Exec.newConfigSource()
+                .set("default_from_timestamp_format", ImmutableList.of("%Y-%m-%d %H:%M:%S"))
+                .set("default_to_timestamp_format", "%Y/%m/%d %H:%M:%S.%6N")
+                .set("columns", ImmutableList.of(ImmutableMap.of("name", "timestamp")))
+                .set("parallelism", parallelism);
+    }
+
+    // every invalidInterval-th value is replaced with invalidValue if not null
+    private List<List<Page>> buildPages(String invalidValue, int invalidInterval)
+    {
+        List<List<Page>> pages = new ArrayList<>();
+        int id = 0;
+        for (int p = 0; p < PAGE_COUNT; p++) {
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < RECORDS_PER_PAGE; i++, id++) {
+                String timestamp = String.format("2016-05-%02d %02d:%02d:%02d", 1 + id % 28, id % 24, id % 60, id % 59);
+                values.add(invalidValue != null && id % invalidInterval == invalidInterval - 1 ? invalidValue : timestamp);
+                values.add((long) id);
+            }
+            pages.add(PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values.toArray()));
+        }
+        return pages;
+    }
+
+    private List<Object[]> run(ConfigSource config, List<List<Page>> pages)
+    {
+        final TimestampFormatFilterPlugin plugin = new TimestampFormatFilterPlugin();
+        final TaskSource[] taskSource = new TaskSource[1];
+        final Schema[] outputSchema = new Schema[1];
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control() {
+            @Override
+            public void run(TaskSource source, Schema schema)
+            {
+                taskSource[0] = source;
+                outputSchema[0] = schema;
+            }
+        });
+
+        CollectPageOutput collector = new CollectPageOutput();
+        PageOutput output = plugin.open(taskSource[0], inputSchema, outputSchema[0], collector);
+        try {
+            for (List<Page> page : pages) {
+                for (Page p : page) {
+                    output.add(p);
+                }
+            }
+            output.finish();
+        }
+        finally {
+            output.close();
+        }
+        return Pages.toObjects(outputSchema[0], collector.pages);
+    }
+
+    @Test
+    public void testSameRecordsInOrder()
+    {
+        List<Object[]> expected = run(newConfig(1), buildPages(null, 0));
+        List<Object[]> actual = run(newConfig(4), buildPages(null, 0));
+        assertEquals(PAGE_COUNT * RECORDS_PER_PAGE, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+            assertEquals((long) i, actual.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void testMergedMetrics() throws Exception
+    {
+        File metricsFile = new File(temporaryFolder.getRoot(), "metrics.jsonl");
+        // invalid values in chunks of all workers are counted once by the shared handler
+        run(newConfig(4).set("metrics", true).set("metrics_file", metricsFile.getPath()).set("invalid_value_log_limit", 3),
+                buildPages("foo", 10));
+        String json = new String(Files.readAllBytes(metricsFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json, json.contains(String.format("\"values\":%d", PAGE_COUNT * RECORDS_PER_PAGE)));
+        assertTrue(json, json.contains(String.format("\"invalids\":%d,", PAGE_COUNT * RECORDS_PER_PAGE / 10)));
+    }
+
+    @Test
+    public void testStopOnInvalidRecord()
+    {
+        try {
+            run(newConfig(4).set("stop_on_invalid_record", true), buildPages("foo", PAGE_COUNT * RECORDS_PER_PAGE / 2));
+            fail();
+        }
+        catch (DataException ex) {
+            assertEquals(InvalidValueException.class, ex.getClass());
+            assertEquals("failed to parse string: \"foo\"", ex.getMessage());
+        }
+    }
+
+    private static class CollectPageOutput
+            implements PageOutput
+    {
+        private final List<Page> pages = new ArrayList<>();
+
+        @Override
+        public void add(Page page)
+        {
+            pages.add(page);
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.embulk.filter.timestamp_format;
+
+import com.google.common.collect.ImmutableList;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.spi.Column;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.PageTestUtils;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.embulk.spi.util.Pages;
+import org.joda.time.DateTimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestRecordProcessorGenerator
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testGenerateSource()
+    {
+        ColumnConverter[] converters = new ColumnConverter[RecordProcessorGenerator.COLUMNS_PER_METHOD + 2];
+        for (int i = 0; i < converters.length; i++) {
+            converters[i] = new ColumnConverter.LongPassThrough(i);
+        }
+        converters[1] = new ColumnConverter.TimestampToLong(1, new InvalidValueHandler("column1", false, -1, 0), TimestampUnit.MilliSecond);
+        String source = RecordProcessorGenerator.generateSource(converters);
+
+        // pass-through is inlined
+        assertTrue(source.contains("pageBuilder.setLong(0, pageReader.getLong(0));"));
+        assertFalse(source.contains("converter0"));
+        // other converters are called through fields of concrete classes
+        assertTrue(source.contains("private final org.embulk.filter.timestamp_format.ColumnConverter.TimestampToLong converter1;"));
+        assertTrue(source.contains("converter1.convert(pageReader, pageBuilder);"));
+        // split into methods
+        assertTrue(source.contains("processRecord1(pageReader, pageBuilder);"));
+        assertFalse(source.contains("processRecord2("));
+    }
+
+    @Test
+    public void testGenerate()
+    {
+        // wider than a method, with pass-through and cast columns
+        int columnCount = RecordProcessorGenerator.COLUMNS_PER_METHOD + 2;
+        ImmutableList.Builder<Column> inputColumns = ImmutableList.builder();
+        ImmutableList.Builder<Column> outputColumns = ImmutableList.builder();
+        ColumnConverter[] converters = new ColumnConverter[columnCount];
+        TimestampParser parser = new TimestampParser(new JRubyHelperFactory(null), Arrays.asList("yyyy-MM-dd"), DateTimeZone.UTC, false);
+        for (int i = 0; i < columnCount; i++) {
+            InvalidValueHandler invalidValueHandler = new InvalidValueHandler("column" + i, false, -1, 0);
+            Type inputType;
+            switch (i % 3) {
+                case 0:
+                    inputType = Types.LONG;
+                    converters[i] = new ColumnConverter.LongPassThrough(i);
+                    break;
+                case 1:
+                    inputType = Types.TIMESTAMP;
+                    converters[i] = new ColumnConverter.TimestampToLong(i, invalidValueHandler, TimestampUnit.MilliSecond);
+                    break;
+                default:
+                    inputType = Types.STRING;
+                    converters[i] = new ColumnConverter.StringToLong(i, invalidValueHandler, parser, TimestampUnit.Second);
+                    break;
+            }
+            inputColumns.add(new Column(i, "column" + i, inputType));
+            outputColumns.add(new Column(i, "column" + i, Types.LONG));
+        }
+        Schema inputSchema = new Schema(inputColumns.build());
+        Schema outputSchema = new Schema(outputColumns.build());
+
+        List<Object> values = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            for (int i = 0; i < columnCount; i++) {
+                if (r == 2 && i % 5 == 0) {
+                    values.add(null);
+                    continue;
+                }
+                switch (i % 3) {
+                    case 0:
+                        values.add((long) (r * columnCount + i));
+                        break;
+                    case 1:
+                        values.add(Timestamp.ofEpochSecond(1462060800L + r * columnCount + i, 123000000));
+                        break;
+                    default:
+                        values.add(r == 1 && i == 2 ? "foo" : String.format("2016-05-%02d", 1 + (r + i) % 28));
+                        break;
+                }
+            }
+        }
+
+        RecordProcessor generated = RecordProcessorGenerator.generate(converters);
+        assertNotNull(generated);
+        assertFalse(generated instanceof ConverterRecordProcessor);
+
+        List<Object[]> expected = process(new ConverterRecordProcessor(converters), inputSchema, outputSchema, values);
+        List<Object[]> actual = process(generated, inputSchema, outputSchema, values);
+        assertEquals(3, actual.size());
+        for (int r = 0; r < expected.size(); r++) {
+            assertArrayEquals(expected.get(r), actual.get(r));
+        }
+    }
+
+    private List<Object[]> process(RecordProcessor recordProcessor, Schema inputSchema, Schema outputSchema, List<Object> values)
+    {
+        final List<Page> outputPages = new ArrayList<>();
+        PageOutput output = new PageOutput() {
+            @Override
+            public void add(Page page)
+            {
+                outputPages.add(page);
+            }
+
+            @Override
+            public void finish()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        PageReader pageReader = new PageReader(inputSchema);
+        PageBuilder pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, output);
+        try {
+            for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values.toArray())) {
+                pageReader.setPage(page);
+                while (pageReader.nextRecord()) {
+                    recordProcessor.processRecord(pageReader, pageBuilder);
+                    pageBuilder.addRecord();
+                }
+            }
+            pageBuilder.finish();
+        }
+        finally {
+            pageReader.close();
+            pageBuilder.close();
+        }
+        return Pages.toObjects(outputSchema, outputPages);
+    }
+}
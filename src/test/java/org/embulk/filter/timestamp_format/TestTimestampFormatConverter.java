@@ -110,5 +110,60 @@ public class TestTimestampFormatConverter
             }
         }
     }
-}
 
+    @Test
+    public void testToJavaTimeFormat()
+    {
+        assertEquals("uuuu-MM-dd HH:mm:ss.SSSSSSSSS XXX", TimestampFormatConverter.toJavaTimeFormat("%Y-%m-%d %H:%M:%S.%N %:z", true));
+        assertEquals("uuuu-MM-dd HH:mm:ss.SSSSSS xxx", TimestampFormatConverter.toJavaTimeFormat("%Y-%m-%d %H:%M:%S.%6N %:z", false));
+        assertEquals("'T'ppd M 'UTC' '['''", TimestampFormatConverter.toJavaTimeFormat("T%e %-m UTC ['", true));
+        assertEquals("yyyy-MM-dd HH:mm:ss.SSSSSSSSS XX", TimestampFormatConverter.toJavaTimeFormat("yyyy-MM-dd HH:mm:ss.nnnnnnnnn Z", true));
+        assertEquals("yyyy-MM-dd'T'HH:mm:ss xxx", TimestampFormatConverter.toJavaTimeFormat("yyyy-MM-dd'T'HH:mm:ss ZZ", false));
+        assertEquals(null, TimestampFormatConverter.toJavaTimeFormat("%y-%m-%d", true));
+        assertEquals(null, TimestampFormatConverter.toJavaTimeFormat("%s", true));
+        assertEquals(null, TimestampFormatConverter.toJavaTimeFormat("xxxx-ww", true));
+    }
+
+    @Test
+    public void testJavaTimeParserAndFormatter()
+    {
+        String javaTimeFormat = TimestampFormatConverter.toJavaTimeFormat("%Y-%m-%d %H:%M:%S.%N %z", true);
+        TimestampParser parser = TimestampParser.ofJavaTime(Arrays.asList("uuuu-MM-dd", javaTimeFormat), zone, false);
+        assertEquals(timestamp, parser.parse("2016-05-13 18:02:39.123456789 +0900"));
+        assertEquals(Timestamp.ofEpochSecond(1463097600, 0), parser.parse("2016-05-13"));
+        try {
+            parser.parse("2016-05-13 18:02:39");
+            fail();
+        }
+        catch (IllegalArgumentException ex) {
+        }
+
+        String javaTimeToFormat = TimestampFormatConverter.toJavaTimeFormat("%Y-%m-%d %H:%M:%S.%N %:z %a %e", false);
+        TimestampFormatter formatter = TimestampFormatter.ofJavaTime(javaTimeToFormat, DateTimeZone.forID("Asia/Tokyo"));
+        assertEquals("2016-05-13 18:02:39.123456789 +09:00 Fri 13", formatter.format(timestamp));
+    }
+
+    @Test
+    public void testToJavaFormatterFormat()
+    {
+        // CompiledTimestampFormatter prints the same with RubyDateFormat
+        String[] rubyFormats = {
+            "%Y-%m-%d %H:%M:%S.%N %z", "%Y-%m-%dT%H:%M:%S.%3N%:z", "%-m/%-d/%y %I:%M:%S %p", "%a, %d %b %Y %T %z",
+            "%A %B %-d %-H:%-M:%-S.%6N", "%j %u %F %R ok", "%D %r %L", "%-e %-k %-l",
+        };
+        for (DateTimeZone toTimeZone : new DateTimeZone[] {DateTimeZone.UTC, DateTimeZone.forID("Asia/Tokyo")}) {
+            for (String rubyFormat : rubyFormats) {
+                String javaFormat = TimestampFormatConverter.toJavaFormatterFormat(rubyFormat);
+                StringBuilder expected = new StringBuilder();
+                CompiledTimestampFormatter.compile(rubyFormat, toTimeZone).format(timestamp.getEpochSecond(), timestamp.getNano(), expected);
+                assertEquals(rubyFormat, expected.toString(), new TimestampFormatter(jruby, javaFormat, toTimeZone).format(timestamp));
+            }
+        }
+        assertEquals("MM/dd/yy HH:mm:ss CC", TimestampFormatConverter.toJavaFormatterFormat("%x %X %C"));
+        assertEquals(null, TimestampFormatConverter.toJavaFormatterFormat("%e"));
+        assertEquals(null, TimestampFormatConverter.toJavaFormatterFormat("%::z"));
+        assertEquals(null, TimestampFormatConverter.toJavaFormatterFormat("%L %N"));
+        assertEquals(null, TimestampFormatConverter.toJavaFormatterFormat("%_m"));
+        assertEquals(null, TimestampFormatConverter.toJavaFormatterFormat("%%"));
+    }
+}
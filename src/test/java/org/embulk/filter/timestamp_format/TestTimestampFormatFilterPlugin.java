@@ -0,0 +1,98 @@
+package org.embulk.filter.timestamp_format;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.FilterPlugin;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageTestUtils;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Types;
+import org.embulk.spi.util.Pages;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTimestampFormatFilterPlugin
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private final Schema inputSchema = new Schema(ImmutableList.of(new Column(0, "timestamp", Types.STRING)));
+
+    private List<Object[]> run(Map<String, Object> columnConfig, Object... values)
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("default_from_timestamp_format", ImmutableList.of("%Y%m%d"))
+                .set("columns", ImmutableList.of(columnConfig));
+        final TimestampFormatFilterPlugin plugin = new TimestampFormatFilterPlugin();
+        final TaskSource[] taskSource = new TaskSource[1];
+        final Schema[] outputSchema = new Schema[1];
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control() {
+            @Override
+            public void run(TaskSource source, Schema schema)
+            {
+                taskSource[0] = source;
+                outputSchema[0] = schema;
+            }
+        });
+
+        final List<Page> outputPages = new ArrayList<>();
+        PageOutput output = plugin.open(taskSource[0], inputSchema, outputSchema[0], new PageOutput() {
+            @Override
+            public void add(Page page)
+            {
+                outputPages.add(page);
+            }
+
+            @Override
+            public void finish()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        });
+        try {
+            for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values)) {
+                output.add(page);
+            }
+            output.finish();
+        }
+        finally {
+            output.close();
+        }
+        return Pages.toObjects(outputSchema[0], outputPages);
+    }
+
+    @Test
+    public void testFromUnitDoesNotParseStrings()
+    {
+        // from_unit is for numbers, and strings of digits are parsed with formats as before
+        List<Object[]> records = run(ImmutableMap.<String, Object>of("name", "timestamp", "type", "timestamp", "from_unit", "second"),
+                "20160513");
+        assertEquals(Timestamp.ofEpochSecond(1463097600L, 0), records.get(0)[0]);
+    }
+
+    @Test
+    public void testFromStringUnitBeforeFormats()
+    {
+        List<Object[]> records = run(ImmutableMap.<String, Object>of("name", "timestamp", "type", "timestamp", "from_string_unit", "second"),
+                "20160513", "1463065359.123456789");
+        assertEquals(Timestamp.ofEpochSecond(20160513L, 0), records.get(0)[0]);
+        assertEquals(Timestamp.ofEpochSecond(1463065359L, 123456789), records.get(1)[0]);
+    }
+}
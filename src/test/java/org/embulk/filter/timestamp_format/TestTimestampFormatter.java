@@ -0,0 +1,116 @@
+package org.embulk.filter.timestamp_format;
+
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestTimestampFormatter
+{
+    private static final long EPOCH_SECOND = 1463065359L; // 2016-05-12 15:02:39 UTC
+
+    @Test
+    public void testJavaFormat()
+    {
+        TimestampFormatter formatter = new TimestampFormatter(null, "yyyy-MM-dd HH:mm:ss.SSS Z", DateTimeZone.forID("Asia/Tokyo"));
+        assertEquals("2016-05-13 00:02:39.123 +0900", formatter.format(EPOCH_SECOND, 123456789));
+    }
+
+    @Test
+    public void testJavaFormatWithNano()
+    {
+        TimestampFormatter formatter = new TimestampFormatter(null, "yyyy-MM-dd'T'HH:mm:ss.nnnnnnnnnZ", DateTimeZone.UTC);
+        assertEquals("2016-05-12T15:02:39.000001000+0000", formatter.format(EPOCH_SECOND, 1000));
+
+        formatter = new TimestampFormatter(null, "nnnnnn", DateTimeZone.UTC);
+        assertEquals("123456", formatter.format(EPOCH_SECOND, 123456789));
+    }
+
+    @Test
+    public void testFormatToBuffer()
+    {
+        TimestampFormatter formatter = new TimestampFormatter(null, "yyyy-MM-dd HH:mm:ss.nnnnnn", DateTimeZone.UTC);
+        StringBuilder buffer = new StringBuilder("[");
+        formatter.format(EPOCH_SECOND, 123456789, buffer);
+        formatter.format(0L, 0, buffer.append(","));
+        assertEquals("[2016-05-12 15:02:39.123456,1970-01-01 00:00:00.000000", buffer.toString());
+    }
+
+    @Test
+    public void testCacheWithSubSecondFields()
+    {
+        TimestampFormatter formatter = new TimestampFormatter(null, "yyyy-MM-dd HH:mm:ss.nnnnnnnnn", DateTimeZone.UTC);
+        assertEquals("2016-05-12 15:02:39.000000001", formatter.format(EPOCH_SECOND, 1));
+        assertEquals("2016-05-12 15:02:39.123456789", formatter.format(EPOCH_SECOND, 123456789));
+        assertEquals("2016-05-12 15:02:40.000000000", formatter.format(EPOCH_SECOND + 1, 0));
+        assertEquals(1L, formatter.getCacheHitCount());
+        assertEquals(2L, formatter.getCacheMissCount());
+
+        StringBuilder buffer = new StringBuilder("[");
+        formatter.format(EPOCH_SECOND + 1, 999999999, buffer);
+        assertEquals("[2016-05-12 15:02:40.999999999", buffer.toString());
+        assertEquals(2L, formatter.getCacheHitCount());
+    }
+
+    @Test
+    public void testCacheWithDateOnlyFormat()
+    {
+        TimestampFormatter formatter = new TimestampFormatter(null, "yyyy-MM-dd Z", DateTimeZone.forID("Asia/Tokyo"));
+        String first = formatter.format(EPOCH_SECOND, 0);
+        assertEquals("2016-05-13 +0900", first);
+        assertSame(first, formatter.format(EPOCH_SECOND + 3600, 0));
+        assertEquals("2016-05-13 +0900", formatter.format(EPOCH_SECOND - 159, 0)); // 2016-05-13 00:00:00 +0900
+        assertEquals("2016-05-12 +0900", formatter.format(EPOCH_SECOND - 160, 0));
+        assertEquals(2L, formatter.getCacheHitCount());
+    }
+
+    @Test
+    public void testCacheAroundTimeZoneTransition()
+    {
+        // 2016-03-13 02:00:00 -0800 is 2016-03-13 03:00:00 -0700 in America/Los_Angeles
+        DateTimeZone timeZone = DateTimeZone.forID("America/Los_Angeles");
+        long transition = 1457863200L;
+        TimestampFormatter cached = new TimestampFormatter(null, "yyyy-MM-dd Z", timeZone);
+        for (long epochSecond : new long[] {transition - 3600, transition, transition - 1, transition + 3600, transition - 7200 * 4}) {
+            TimestampFormatter fresh = new TimestampFormatter(null, "yyyy-MM-dd Z", timeZone);
+            assertEquals(fresh.format(epochSecond, 0), cached.format(epochSecond, 0));
+        }
+        assertEquals("2016-03-13 -0800", cached.format(transition - 1, 0));
+        assertEquals("2016-03-13 -0700", cached.format(transition, 0));
+    }
+
+    @Test
+    public void testNoCacheWithMilliSecond()
+    {
+        TimestampFormatter formatter = new TimestampFormatter(null, "HH:mm:ss.SSS", DateTimeZone.UTC);
+        assertEquals("15:02:39.001", formatter.format(EPOCH_SECOND, 1000000));
+        assertEquals("15:02:39.002", formatter.format(EPOCH_SECOND, 2000000));
+        assertEquals(0L, formatter.getCacheHitCount());
+        assertEquals(0L, formatter.getCacheMissCount());
+    }
+
+    @Test
+    public void testCacheIsSameWithoutCache()
+    {
+        String[] formats = {"%Y-%m-%d %H:%M:%S.%6N %z", "%F %Z", "%s.%L %3N", "yyyy-MM-dd'T'HH:mm:ss.nnnnnnZZ", "EEE, dd MMM yyyy z"};
+        for (String format : formats) {
+            for (String zone : new String[] {"UTC", "America/Los_Angeles", "Europe/London"}) {
+                DateTimeZone timeZone = DateTimeZone.forID(zone);
+                TimestampFormatter cached = new TimestampFormatter(null, format, timeZone);
+                Random random = new Random(0);
+                long epochSecond = 1457800000L;
+                for (int i = 0; i < 2000; i++) {
+                    epochSecond += random.nextInt(5) == 0 ? random.nextInt(20000) - 10000 : random.nextInt(2);
+                    int nano = random.nextInt(1000000000);
+                    TimestampFormatter fresh = new TimestampFormatter(null, format, timeZone);
+                    assertEquals(format, fresh.format(epochSecond, nano), cached.format(epochSecond, nano));
+                }
+                assertTrue(format, cached.getCacheHitCount() > 0);
+            }
+        }
+    }
+}
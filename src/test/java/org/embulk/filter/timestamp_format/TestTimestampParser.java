@@ -0,0 +1,75 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestTimestampParser
+{
+    private static final int VALUE_COUNT = 40000; // more than REORDER_INTERVAL twice
+
+    @Test
+    public void testAdaptiveFormatOrder()
+    {
+        List<String> formatList = Arrays.asList("yyyy-MM-dd", "yyyy/MM/dd");
+        TimestampParser parser = new TimestampParser(new JRubyHelperFactory(null), formatList, DateTimeZone.UTC, true);
+        parser.parse("2016-05-01");
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            assertEquals(Timestamp.ofEpochSecond(1462060800L, 0), parser.parse("2016/05/01"));
+        }
+        assertArrayEquals(new int[] {1, 0}, parser.getFormatOrder());
+        assertArrayEquals(new long[] {1L, VALUE_COUNT}, parser.getFormatHitCounts());
+    }
+
+    @Test
+    public void testAdaptiveFormatOrderWithOverlappingFormats()
+    {
+        // every third value matches both formats with different results, and others match only the second
+        List<String> formatList = Arrays.asList("yyyy-MM-dd HH:mm:ss", "yyyy-dd-MM HH:mm:ss");
+        TimestampParser fixedParser = new TimestampParser(new JRubyHelperFactory(null), formatList, DateTimeZone.UTC, false);
+        TimestampParser adaptiveParser = new TimestampParser(new JRubyHelperFactory(null), formatList, DateTimeZone.UTC, true);
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            String text;
+            if (i % 3 == 0) {
+                text = String.format("2016-%02d-%02d 00:00:%02d", 1 + i % 12, 1 + i % 10, i % 60);
+            }
+            else {
+                text = String.format("2016-%02d-%02d 00:00:%02d", 13 + i % 16, 1 + i % 12, i % 60);
+            }
+            Timestamp expected = fixedParser.parse(text);
+            Timestamp actual = adaptiveParser.parse(text);
+            if (!expected.equals(actual)) {
+                fail(String.format("%s: expected %s but %s in the order %s", text, expected, actual,
+                        Arrays.toString(adaptiveParser.getFormatOrder())));
+            }
+        }
+        assertArrayEquals(fixedParser.getFormatHitCounts(), adaptiveParser.getFormatHitCounts());
+        assertArrayEquals(new int[] {0, 1}, adaptiveParser.getFormatOrder());
+    }
+
+    @Test
+    public void testTooLongFraction()
+    {
+        // the fraction overflows with the first format, and the second one reads it as a literal
+        String text = "2016-05-01.12345678901234567890";
+        TimestampParser parser = new TimestampParser(new JRubyHelperFactory(null),
+                Arrays.asList("yyyy-MM-dd.nnnnnnnnn", "yyyy-MM-dd'.12345678901234567890'"), DateTimeZone.UTC, false);
+        assertEquals(Timestamp.ofEpochSecond(1462060800L, 0), parser.parse(text));
+
+        parser = new TimestampParser(new JRubyHelperFactory(null), Arrays.asList("yyyy-MM-dd.nnnnnnnnn"), DateTimeZone.UTC, false);
+        try {
+            parser.parse(text);
+            fail();
+        }
+        catch (NumberFormatException ex) {
+            assertEquals("fraction is too long: \"" + text + "\"", ex.getMessage());
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.embulk.spi.time.Timestamp;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class TestTimestampUnit
 {
@@ -55,6 +56,39 @@ public class TestTimestampUnit
         assertEquals(100200192, timestamp.getNano());
     }
 
+    @Test
+    public void testStringToTimestamp()
+    {
+        assertEquals(Timestamp.ofEpochSecond(1462087147L, 0), TimestampUnit.toTimestamp("1462087147", TimestampUnit.Second));
+        assertEquals(Timestamp.ofEpochSecond(1462087147L, 100200300), TimestampUnit.toTimestamp("1462087147.1002003009", TimestampUnit.Second));
+        assertEquals(Timestamp.ofEpochSecond(1462087147L, 100200300), TimestampUnit.toTimestamp("1462087147100.2003", TimestampUnit.MilliSecond));
+        assertEquals(Timestamp.ofEpochSecond(1462087147L, 100200300), TimestampUnit.toTimestamp("1462087147100200300", TimestampUnit.NanoSecond));
+        assertEquals(Timestamp.ofEpochSecond(-2L, 900000000), TimestampUnit.toTimestamp("-1.1", TimestampUnit.Second));
+        assertNull(TimestampUnit.toTimestamp("", TimestampUnit.Second));
+        assertNull(TimestampUnit.toTimestamp("1462087147.", TimestampUnit.Second));
+        assertNull(TimestampUnit.toTimestamp("1.462087147e9", TimestampUnit.Second));
+        assertNull(TimestampUnit.toTimestamp("2016-05-01", TimestampUnit.Second));
+        assertNull(TimestampUnit.toTimestamp("14620871471002003001000", TimestampUnit.NanoSecond));
+    }
+
+    @Test
+    public void testToEpochSecondAndNano()
+    {
+        long epochNanoSecond = 1462087147100200300L;
+
+        assertEquals(1462087147L, TimestampUnit.toEpochSecond(epochNanoSecond / 1000000, TimestampUnit.MilliSecond));
+        assertEquals(100000000, TimestampUnit.toNano(epochNanoSecond / 1000000, TimestampUnit.MilliSecond));
+
+        assertEquals(1462087147L, TimestampUnit.toEpochSecond(epochNanoSecond, TimestampUnit.NanoSecond));
+        assertEquals(100200300, TimestampUnit.toNano(epochNanoSecond, TimestampUnit.NanoSecond));
+
+        assertEquals(-2L, TimestampUnit.toEpochSecond(-1500L, TimestampUnit.MilliSecond));
+        assertEquals(500000000, TimestampUnit.toNano(-1500L, TimestampUnit.MilliSecond));
+
+        assertEquals(-2L, TimestampUnit.toEpochSecond(-1.5, TimestampUnit.Second));
+        assertEquals(500000000, TimestampUnit.toNano(-1.5, TimestampUnit.Second));
+    }
+
     @Test
     public void testTimestampToLong()
     {
@@ -0,0 +1,70 @@
+package org.embulk.filter.timestamp_format;
+
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestValueCache
+{
+    @Test
+    public void testLru()
+    {
+        ValueCache<String, String> cache = ValueCache.create("lru", 2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C"); // evicts b, the least recently used
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testClock()
+    {
+        ValueCache<String, String> cache = ValueCache.create("clock", 2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C"); // evicts b, which is not referenced
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        cache.put("d", "D"); // both referenced, the hand clears flags and evicts a
+        assertNull(cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals("D", cache.get("d"));
+        assertEquals(5, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testZeroSize()
+    {
+        ValueCache<String, String> cache = ValueCache.create("clock", 0);
+        cache.put("a", "A");
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testFormatHitsOfCachedValues()
+    {
+        TimestampParser parser = new TimestampParser(new JRubyHelperFactory(null), Arrays.asList("yyyy-MM-dd", "yyyyMMdd"), DateTimeZone.UTC, false);
+        parser.setCache(ValueCache.<String, ValueCache.Entry<Timestamp>>create("lru", 10));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Timestamp.ofEpochSecond(1462060800L, 0), parser.parse("2016-05-01"));
+            assertEquals(Timestamp.ofEpochSecond(1462060800L, 0), parser.parse("20160501"));
+        }
+        parser.parse("20160501");
+        assertEquals(5, parser.getCache().getHitCount());
+        assertEquals(3L, parser.getFormatHitCounts()[0]);
+        assertEquals(4L, parser.getFormatHitCounts()[1]);
+    }
+}